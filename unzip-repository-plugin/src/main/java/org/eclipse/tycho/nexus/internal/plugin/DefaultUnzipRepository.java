@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin;
 
-import java.io.File;
 import java.util.Arrays;
 
 import org.codehaus.plexus.component.annotations.Component;
@@ -18,8 +17,10 @@ import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
 import org.eclipse.tycho.nexus.internal.plugin.cache.RequestPathConverter;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ResolutionContext;
+import org.eclipse.tycho.nexus.internal.plugin.cache.TokenizedPath;
 import org.eclipse.tycho.nexus.internal.plugin.cache.UnzipCache;
-import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+import org.eclipse.tycho.nexus.internal.plugin.cache.VersioningCache;
 import org.eclipse.tycho.nexus.internal.plugin.storage.ZipAwareStorageCollectionItem;
 import org.eclipse.tycho.nexus.internal.plugin.storage.ZippedItem;
 import org.sonatype.nexus.ApplicationStatusSource;
@@ -33,7 +34,10 @@ import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.events.NexusStartedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventRetrieve;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventAdd;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.item.StorageLinkItem;
@@ -49,6 +53,7 @@ import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.LocalRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 /**
@@ -90,6 +95,7 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
 
     private RepositoryKind repositoryKind;
     private UnzipCache cache;
+    private VersioningCache versioningCache;
     private boolean processedNexusStartedEvent = false;
     private boolean isMasterAvailable = false;
 
@@ -243,6 +249,41 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
         }
     }
 
+    /**
+     * Stops the background threads of the caches once this repository is removed.
+     */
+    @Subscribe
+    public void onRepositoryRegistryEventRemove(final RepositoryRegistryEventRemove evt) {
+        if (evt.getRepository() != this) {
+            return;
+        }
+        synchronized (this) {
+            if (cache != null) {
+                cache.shutdown();
+            }
+            if (versioningCache != null) {
+                versioningCache.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Discards cached versioning information if a maven-metadata.xml is changed or deleted, and
+     * forgets that archives were not found if they or one of their folders are created, changed or
+     * deleted. Items of all repositories are considered, because the master repository may be a
+     * group.
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void onMetadataItemEvent(final RepositoryItemEvent evt) {
+        if (evt instanceof RepositoryItemEventRetrieve) {
+            return;
+        }
+        final StorageItem item = evt.getItem();
+        getVersioningCache().invalidate(item.getPath(), item instanceof StorageCollectionItem);
+        getCache().invalidateMissingArchives(item.getPath(), item instanceof StorageCollectionItem);
+    }
+
     /**
      * Retrieves an item from the master repository.
      * 
@@ -281,8 +322,9 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
 
         final RequestTimeTrace timeTrace = new RequestTimeTrace(request.getRequestPath());
 
+        final ResolutionContext resolutionContext = ResolutionContext.get(request.getRequestContext(), this);
         final ConversionResult conversionResult = RequestPathConverter.convert(getMasterRepository(), request,
-                isUseVirtualVersion());
+                isUseVirtualVersion(), getVersioningCache(), resolutionContext);
 
         if (conversionResult.isPathConverted()) {
             getLogger().debug(
@@ -295,7 +337,7 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
         // a) path does not point to zip content (-> null)
         // b) a path to a file/folder inside a zip file (-> ZippedItem is created and returned)
         // c) a non-existing path under an existing zip file (-> retrieving ZippedItem fails with ItemNotFoundException)
-        final ZippedItem zippedItem = getZippedItem(conversionResult, request);
+        final ZippedItem zippedItem = getZippedItem(conversionResult, request, resolutionContext);
         if (zippedItem != null) {
             final StorageItem zippedStorageItem = zippedItem.getZippedStorageItem();
             getLogger().debug(timeTrace.getMessage());
@@ -330,52 +372,27 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
      * @param request
      *            the {@link ResourceStoreRequest} for the item. The request is included in the
      *            {@link StorageItem} returned by the repository.
+     * @param resolutionContext
+     *            the resolution context of the request
      * @return item that represents a file or folder within a zip file, <code>null</code> if the
      *         requested path does not point to zip content
      * @throws LocalStorageException
      * @throws ItemNotFoundException
      *             is thrown if for non-existing or invalid request path
      */
-    private ZippedItem getZippedItem(final ConversionResult conversionResult, ResourceStoreRequest request)
-            throws LocalStorageException, ItemNotFoundException {
-        final StringBuilder pathInZip = new StringBuilder();
-        final String[] pathSegments = conversionResult.getConvertedPath().split("/");
-        String zipFilePath = "";
-        String zipItemPath = null;
-        long zipLastModified = 0L;
-
-        for (final String pathSegment : pathSegments) {
-            if (zipItemPath == null) {
-                if (!zipFilePath.toString().endsWith("/")) {
-                    zipFilePath = zipFilePath + "/";
-                }
-                zipFilePath = zipFilePath + pathSegment;
-                if (zipFilePath.endsWith(Util.UNZIP_TYPE_EXTENSION)) {
-                    final String zipFilePathWithoutExtension = zipFilePath.substring(0, zipFilePath.length()
-                            - Util.UNZIP_TYPE_EXTENSION.length());
-                    getCache().cleanSnapshots(conversionResult);
-                    final File zipFile = getCache().getArchive(zipFilePathWithoutExtension);
-                    if (zipFile != null) {
-                        zipLastModified = zipFile.lastModified();
-                        zipItemPath = zipFilePathWithoutExtension;
-                    }
-                }
-            } else {
-                if (pathInZip.length() > 0) {
-                    pathInZip.append("/");
-                }
-                pathInZip.append(pathSegment);
-            }
+    private ZippedItem getZippedItem(final ConversionResult conversionResult, ResourceStoreRequest request,
+            final ResolutionContext resolutionContext) throws LocalStorageException, ItemNotFoundException {
+        final TokenizedPath path = conversionResult.getTokenizedConvertedPath();
+        final String zipItemPath = path.getZipItemPath();
+        if (zipItemPath == null) {
+            return null;
         }
-        if (zipItemPath != null) {
-            // creating a new ZippedItem fails with ItemNotFoundException if a non-existing file or folder
-            // inside the (existing) zip file is accessed
-            getLogger().debug(conversionResult.getConvertedPath() + " points into a zip file.");
-            final ZippedItem zippedItem = ZippedItem.newZippedItem(this, request, zipItemPath, pathInZip.toString(),
-                    zipLastModified, getLogger());
-            return zippedItem;
-        }
-        return null;
+        getCache().scheduleSnapshotCleanUp(conversionResult);
+        final long zipLastModified = getCache().getLastModified(zipItemPath, resolutionContext);
+        // creating a new ZippedItem fails with ItemNotFoundException if a non-existing file or folder
+        // inside the (existing) zip file is accessed
+        getLogger().debug(conversionResult.getConvertedPath() + " points into a zip file.");
+        return ZippedItem.newZippedItem(this, request, zipItemPath, path.getPathInZip(), zipLastModified, getLogger());
     }
 
     public synchronized UnzipCache getCache() {
@@ -385,6 +402,13 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
         return cache;
     }
 
+    public synchronized VersioningCache getVersioningCache() {
+        if (versioningCache == null) {
+            versioningCache = new VersioningCache(this);
+        }
+        return versioningCache;
+    }
+
     @Override
     protected StorageLinkItem createLink(final StorageItem item) throws UnsupportedStorageOperationException,
             IllegalOperationException, LocalStorageException {
@@ -419,4 +443,94 @@ public class DefaultUnzipRepository extends AbstractShadowRepository implements
     public void setUseVirtualVersion(final boolean val) {
         ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setUseVirtualVersion(val);
     }
+
+    @Override
+    public boolean isServePrecompressedEntries() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).isServePrecompressedEntries();
+    }
+
+    @Override
+    public void setServePrecompressedEntries(final boolean val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setServePrecompressedEntries(val);
+    }
+
+    @Override
+    public boolean isSpoolInflatedEntries() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).isSpoolInflatedEntries();
+    }
+
+    @Override
+    public void setSpoolInflatedEntries(final boolean val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setSpoolInflatedEntries(val);
+    }
+
+    @Override
+    public long getMaxCacheSize() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getMaxCacheSize();
+    }
+
+    @Override
+    public void setMaxCacheSize(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setMaxCacheSize(val);
+    }
+
+    @Override
+    public long getMetadataMaxAge() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getMetadataMaxAge();
+    }
+
+    @Override
+    public void setMetadataMaxAge(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setMetadataMaxAge(val);
+    }
+
+    @Override
+    public int getSnapshotRetentionCount() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getSnapshotRetentionCount();
+    }
+
+    @Override
+    public void setSnapshotRetentionCount(final int val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setSnapshotRetentionCount(val);
+    }
+
+    @Override
+    public long getSnapshotRetentionPeriod() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getSnapshotRetentionPeriod();
+    }
+
+    @Override
+    public void setSnapshotRetentionPeriod(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setSnapshotRetentionPeriod(val);
+    }
+
+    @Override
+    public boolean isReadHostedArchivesInPlace() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).isReadHostedArchivesInPlace();
+    }
+
+    @Override
+    public void setReadHostedArchivesInPlace(final boolean val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setReadHostedArchivesInPlace(val);
+    }
+
+    @Override
+    public long getVersionRefreshInterval() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getVersionRefreshInterval();
+    }
+
+    @Override
+    public void setVersionRefreshInterval(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setVersionRefreshInterval(val);
+    }
+
+    @Override
+    public long getMetadataReadTimeout() {
+        return ((UnzipRepositoryConfiguration) getExternalConfiguration(false)).getMetadataReadTimeout();
+    }
+
+    @Override
+    public void setMetadataReadTimeout(final long val) {
+        ((UnzipRepositoryConfiguration) getExternalConfiguration(true)).setMetadataReadTimeout(val);
+    }
 }
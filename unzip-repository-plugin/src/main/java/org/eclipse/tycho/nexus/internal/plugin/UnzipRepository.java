@@ -20,4 +20,97 @@ public interface UnzipRepository extends ShadowRepository {
 
     void setUseVirtualVersion(boolean useVirtualVersion);
 
+    /**
+     * If enabled, every DEFLATED file inside an archive can also be retrieved gzip compressed under
+     * its path + ".gz". The compressed data is taken from the archive as it is, so neither inflating
+     * nor deflating takes place on the server.
+     */
+    boolean isServePrecompressedEntries();
+
+    void setServePrecompressedEntries(boolean servePrecompressedEntries);
+
+    /**
+     * If enabled, the inflated data of DEFLATED entries of 1 MB or more is kept in a file next to
+     * the cached archive once the entry was read completely, so that later reads starting in the
+     * middle of the entry, e.g. resumed downloads, can seek instead of inflating the entry from its
+     * beginning. The files count towards the maximal cache size and are deleted together with the
+     * archive.
+     */
+    boolean isSpoolInflatedEntries();
+
+    void setSpoolInflatedEntries(boolean spoolInflatedEntries);
+
+    /**
+     * The number of bytes the archives cached in the local storage of the repository may occupy,
+     * including their persisted indexes and spooled entries. Archives linked to the files of a
+     * hosted master repository are not counted, as they occupy no additional space. If the limit
+     * is exceeded, the least recently used archives are removed from the cache. A value of 0 or
+     * less means that the cache size is not limited.
+     */
+    long getMaxCacheSize();
+
+    void setMaxCacheSize(long maxCacheSize);
+
+    /**
+     * The number of seconds the versioning information read from a maven-metadata.xml of the
+     * master repository is reused to resolve virtual versions. Cached information is discarded as
+     * soon as the metadata file is changed or deleted in any repository; the maximal age is only
+     * needed if the file may change without Nexus noticing, e.g. in the remote repository of a
+     * proxy. A value of 0 or less means that the information does not expire.
+     */
+    long getMetadataMaxAge();
+
+    void setMetadataMaxAge(long metadataMaxAge);
+
+    /**
+     * The number of previous snapshot builds of an artifact which are kept in the cache when a new
+     * snapshot build becomes the latest one. Kept builds are only removed by the cache size limit
+     * or by a clean up for a later build. A value of 0 or less means that only the artifacts of the
+     * latest build are kept.
+     */
+    int getSnapshotRetentionCount();
+
+    void setSnapshotRetentionCount(int snapshotRetentionCount);
+
+    /**
+     * The number of seconds the cached artifacts of previous snapshot builds are kept after a new
+     * snapshot build became the latest one, e.g. for clients still downloading the previous build.
+     * A value of 0 or less means that they are removed immediately.
+     */
+    long getSnapshotRetentionPeriod();
+
+    void setSnapshotRetentionPeriod(long snapshotRetentionPeriod);
+
+    /**
+     * If enabled and the master repository is a hosted repository storing its items as files,
+     * archives are read directly from the storage of the master repository instead of being copied
+     * into the local storage of this repository first. Archives of other master repositories, e.g.
+     * proxies or groups, are still cached.
+     */
+    boolean isReadHostedArchivesInPlace();
+
+    void setReadHostedArchivesInPlace(boolean readHostedArchivesInPlace);
+
+    /**
+     * The number of seconds a resolved virtual version is reused for requests to the same artifact
+     * without resolving it again. Afterwards it is still served, while it is resolved again in the
+     * background, so that requests never wait for the metadata of the master repository once a
+     * version was resolved. Resolved versions are discarded as soon as a maven-metadata.xml they
+     * depend on is changed or deleted. A value of 0 or less means that virtual versions are
+     * resolved on every request.
+     */
+    long getVersionRefreshInterval();
+
+    void setVersionRefreshInterval(long versionRefreshInterval);
+
+    /**
+     * The number of seconds a request waits for a maven-metadata.xml being read from the master
+     * repository. Concurrent reads of the same metadata file are always combined into one, which
+     * is done in the background if a timeout is set. If the read takes longer, the last versioning
+     * information read from the file is used; if there is none, the request fails. A value of 0 or
+     * less means that requests wait until the read is finished.
+     */
+    long getMetadataReadTimeout();
+
+    void setMetadataReadTimeout(long metadataReadTimeout);
 }
@@ -17,6 +17,21 @@ public class UnzipRepositoryConfiguration extends AbstractShadowRepositoryConfig
 
     private static final String USE_VIRTUAL_VERSION = "useVirtualVersion";
 
+    private static final String SERVE_PRECOMPRESSED_ENTRIES = "servePrecompressedEntries";
+    private static final String SPOOL_INFLATED_ENTRIES = "spoolInflatedEntries";
+
+    private static final String MAX_CACHE_SIZE = "maxCacheSize";
+
+    private static final String METADATA_MAX_AGE = "metadataMaxAge";
+
+    private static final String SNAPSHOT_RETENTION_COUNT = "snapshotRetentionCount";
+
+    private static final String SNAPSHOT_RETENTION_PERIOD = "snapshotRetentionPeriod";
+    private static final String READ_HOSTED_ARCHIVES_IN_PLACE = "readHostedArchivesInPlace";
+
+    private static final String VERSION_REFRESH_INTERVAL = "versionRefreshInterval";
+    private static final String METADATA_READ_TIMEOUT = "metadataReadTimeout";
+
     public UnzipRepositoryConfiguration(final Xpp3Dom configuration) {
         super(configuration);
     }
@@ -28,4 +43,79 @@ public class UnzipRepositoryConfiguration extends AbstractShadowRepositoryConfig
     public void setUseVirtualVersion(final boolean val) {
         setNodeValue(getRootNode(), USE_VIRTUAL_VERSION, Boolean.toString(val));
     }
+
+    public boolean isServePrecompressedEntries() {
+        return Boolean.parseBoolean(getNodeValue(getRootNode(), SERVE_PRECOMPRESSED_ENTRIES,
+                Boolean.FALSE.toString()));
+    }
+
+    public void setServePrecompressedEntries(final boolean val) {
+        setNodeValue(getRootNode(), SERVE_PRECOMPRESSED_ENTRIES, Boolean.toString(val));
+    }
+
+    public boolean isSpoolInflatedEntries() {
+        return Boolean.parseBoolean(getNodeValue(getRootNode(), SPOOL_INFLATED_ENTRIES,
+                Boolean.FALSE.toString()));
+    }
+
+    public void setSpoolInflatedEntries(final boolean val) {
+        setNodeValue(getRootNode(), SPOOL_INFLATED_ENTRIES, Boolean.toString(val));
+    }
+
+    public long getMaxCacheSize() {
+        return Long.parseLong(getNodeValue(getRootNode(), MAX_CACHE_SIZE, "0"));
+    }
+
+    public void setMaxCacheSize(final long val) {
+        setNodeValue(getRootNode(), MAX_CACHE_SIZE, Long.toString(val));
+    }
+
+    public long getMetadataMaxAge() {
+        return Long.parseLong(getNodeValue(getRootNode(), METADATA_MAX_AGE, "0"));
+    }
+
+    public void setMetadataMaxAge(final long val) {
+        setNodeValue(getRootNode(), METADATA_MAX_AGE, Long.toString(val));
+    }
+
+    public int getSnapshotRetentionCount() {
+        return Integer.parseInt(getNodeValue(getRootNode(), SNAPSHOT_RETENTION_COUNT, "0"));
+    }
+
+    public void setSnapshotRetentionCount(final int val) {
+        setNodeValue(getRootNode(), SNAPSHOT_RETENTION_COUNT, Integer.toString(val));
+    }
+
+    public long getSnapshotRetentionPeriod() {
+        return Long.parseLong(getNodeValue(getRootNode(), SNAPSHOT_RETENTION_PERIOD, "0"));
+    }
+
+    public void setSnapshotRetentionPeriod(final long val) {
+        setNodeValue(getRootNode(), SNAPSHOT_RETENTION_PERIOD, Long.toString(val));
+    }
+
+    public boolean isReadHostedArchivesInPlace() {
+        return Boolean.parseBoolean(getNodeValue(getRootNode(), READ_HOSTED_ARCHIVES_IN_PLACE,
+                Boolean.FALSE.toString()));
+    }
+
+    public void setReadHostedArchivesInPlace(final boolean val) {
+        setNodeValue(getRootNode(), READ_HOSTED_ARCHIVES_IN_PLACE, Boolean.toString(val));
+    }
+
+    public long getVersionRefreshInterval() {
+        return Long.parseLong(getNodeValue(getRootNode(), VERSION_REFRESH_INTERVAL, "0"));
+    }
+
+    public void setVersionRefreshInterval(final long val) {
+        setNodeValue(getRootNode(), VERSION_REFRESH_INTERVAL, Long.toString(val));
+    }
+
+    public long getMetadataReadTimeout() {
+        return Long.parseLong(getNodeValue(getRootNode(), METADATA_READ_TIMEOUT, "0"));
+    }
+
+    public void setMetadataReadTimeout(final long val) {
+        setNodeValue(getRootNode(), METADATA_READ_TIMEOUT, Long.toString(val));
+    }
 }
@@ -30,6 +30,16 @@ public class UnzipRepositoryConfigurator extends AbstractShadowRepositoryConfigu
         final UnzipRepositoryConfiguration unzipRepoConfig = (UnzipRepositoryConfiguration) externalConfiguration
                 .getConfiguration(false);
 
-        repository.adaptToFacet(UnzipRepository.class).setUseVirtualVersion(unzipRepoConfig.isUseVirtualVersion());
+        final UnzipRepository unzipRepository = repository.adaptToFacet(UnzipRepository.class);
+        unzipRepository.setUseVirtualVersion(unzipRepoConfig.isUseVirtualVersion());
+        unzipRepository.setServePrecompressedEntries(unzipRepoConfig.isServePrecompressedEntries());
+        unzipRepository.setSpoolInflatedEntries(unzipRepoConfig.isSpoolInflatedEntries());
+        unzipRepository.setMaxCacheSize(unzipRepoConfig.getMaxCacheSize());
+        unzipRepository.setMetadataMaxAge(unzipRepoConfig.getMetadataMaxAge());
+        unzipRepository.setSnapshotRetentionCount(unzipRepoConfig.getSnapshotRetentionCount());
+        unzipRepository.setSnapshotRetentionPeriod(unzipRepoConfig.getSnapshotRetentionPeriod());
+        unzipRepository.setReadHostedArchivesInPlace(unzipRepoConfig.isReadHostedArchivesInPlace());
+        unzipRepository.setVersionRefreshInterval(unzipRepoConfig.getVersionRefreshInterval());
+        unzipRepository.setMetadataReadTimeout(unzipRepoConfig.getMetadataReadTimeout());
     }
 }
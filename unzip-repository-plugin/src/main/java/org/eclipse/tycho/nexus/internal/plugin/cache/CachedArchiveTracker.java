@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+
+/**
+ * Keeps track of the archives in the local storage of an unzip repository, their sizes and the
+ * order in which they were accessed, so that the least recently used archives can be evicted once
+ * the cache exceeds its size limit. The size of an archive includes the files kept next to it, i.e.
+ * its persisted index and its spooled entries, see {@link Util#getCachedSize(File)}. These are
+ * added to the size of the archive when they are written. Accesses only update a stamp of the
+ * accessed archive, so that cache hits do not contend for a lock; the access order is established
+ * when archives are selected for eviction.
+ */
+class CachedArchiveTracker {
+
+    // folder of Nexus internal data (attributes, trash) in the local storage
+    private static final String NEXUS_FOLDER = ".nexus";
+
+    /**
+     * A file selected for eviction.
+     */
+    static class Candidate {
+        private final String path;
+        private final long accessStamp;
+
+        Candidate(final String path, final long accessStamp) {
+            this.path = path;
+            this.accessStamp = accessStamp;
+        }
+
+        String getPath() {
+            return path;
+        }
+    }
+
+    private static class TrackedFile {
+        // guarded by this
+        private long size;
+        private boolean removed;
+        private volatile long accessStamp;
+
+        TrackedFile(final long size, final long accessStamp) {
+            this.size = size;
+            this.accessStamp = accessStamp;
+        }
+    }
+
+    private static class FoundFile {
+        private final String path;
+        private final File file;
+        private final long lastModified;
+
+        FoundFile(final String path, final File file) {
+            this.path = path;
+            this.file = file;
+            this.lastModified = file.lastModified();
+        }
+    }
+
+    private final ConcurrentMap<String, TrackedFile> files = new ConcurrentHashMap<String, TrackedFile>();
+    private final AtomicLong totalSize = new AtomicLong();
+    // stamps of accesses are positive, files found in the storage are ordered before all of them
+    private final AtomicLong accessCount = new AtomicLong();
+    private volatile File baseDirectory;
+
+    /**
+     * Registers the files already present in the local storage, e.g. cached before a restart of
+     * Nexus. Archives are considered accessed in the order of their modification time, but before
+     * all archives accessed since this tracker was created. Index files, spool directories and
+     * unfinished temporary files are not tracked on their own. The storage may be accessed
+     * concurrently, so this can run in the background.
+     *
+     * @param baseDirectory
+     *            the root directory of the local storage
+     */
+    void initialize(final File baseDirectory) {
+        final List<FoundFile> found = new ArrayList<FoundFile>();
+        collectFiles(baseDirectory, "", found);
+        Collections.sort(found, new Comparator<FoundFile>() {
+            @Override
+            public int compare(final FoundFile file1, final FoundFile file2) {
+                return file1.lastModified < file2.lastModified ? -1
+                        : (file1.lastModified == file2.lastModified ? 0 : 1);
+            }
+        });
+        long accessStamp = -found.size();
+        for (final FoundFile foundFile : found) {
+            add(foundFile.path, Util.getCachedSize(foundFile.file), accessStamp++);
+        }
+        this.baseDirectory = baseDirectory;
+    }
+
+    private static void collectFiles(final File directory, final String path, final List<FoundFile> found) {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (final File child : children) {
+            final String childPath = path + "/" + child.getName();
+            if (Util.isArchiveSidecar(child.getName())) {
+                // counted with the archive
+                continue;
+            }
+            if (child.isDirectory()) {
+                if (!(path.length() == 0 && NEXUS_FOLDER.equals(child.getName()))) {
+                    collectFiles(child, childPath, found);
+                }
+            } else {
+                found.add(new FoundFile(childPath, child));
+            }
+        }
+    }
+
+    /**
+     * Records an access to a cached file. The size of the file is only recorded on the first
+     * access.
+     *
+     * @param path
+     *            the path of the file in the local storage
+     * @param size
+     *            the size of the file
+     */
+    void accessed(final String path, final long size) {
+        final long accessStamp = accessCount.incrementAndGet();
+        final TrackedFile trackedFile = files.get(path);
+        if (trackedFile == null) {
+            add(path, size, accessStamp);
+        } else {
+            trackedFile.accessStamp = accessStamp;
+        }
+    }
+
+    private void add(final String path, final long size, final long accessStamp) {
+        final TrackedFile trackedFile = new TrackedFile(size, accessStamp);
+        if (files.putIfAbsent(path, trackedFile) == null) {
+            totalSize.addAndGet(size);
+        }
+    }
+
+    /**
+     * Adds the size of a file written next to a cached file, e.g. a spooled entry of an archive,
+     * to the size of the cached file. Has no effect if the cached file is not tracked.
+     *
+     * @param path
+     *            the path of the cached file in the local storage
+     * @param size
+     *            the size of the written file
+     */
+    void grown(final String path, final long size) {
+        final TrackedFile trackedFile = files.get(path);
+        if (trackedFile == null) {
+            return;
+        }
+        synchronized (trackedFile) {
+            if (!trackedFile.removed) {
+                trackedFile.size += size;
+                totalSize.addAndGet(size);
+            }
+        }
+    }
+
+    /**
+     * Records that a cached file was deleted.
+     *
+     * @param path
+     *            the path of the file in the local storage
+     */
+    void removed(final String path) {
+        final TrackedFile trackedFile = files.remove(path);
+        if (trackedFile != null) {
+            synchronized (trackedFile) {
+                trackedFile.removed = true;
+                totalSize.addAndGet(-trackedFile.size);
+            }
+        }
+    }
+
+    /**
+     * Measures the sizes of all tracked archives again, e.g. because files next to an archive were
+     * deleted or written outside of the cache. Has no effect before {@link #initialize(File)} is
+     * done.
+     */
+    void refreshSizes() {
+        final File directory = baseDirectory;
+        if (directory == null) {
+            return;
+        }
+        // measured without holding any lock, so that accesses are not blocked by the file system
+        final Map<TrackedFile, Long> sizes = new HashMap<TrackedFile, Long>();
+        for (final Map.Entry<String, TrackedFile> entry : files.entrySet()) {
+            sizes.put(entry.getValue(), Util.getCachedSize(new File(directory, entry.getKey())));
+        }
+        for (final Map.Entry<TrackedFile, Long> size : sizes.entrySet()) {
+            final TrackedFile trackedFile = size.getKey();
+            synchronized (trackedFile) {
+                if (!trackedFile.removed) {
+                    totalSize.addAndGet(size.getValue() - trackedFile.size);
+                    trackedFile.size = size.getValue();
+                }
+            }
+        }
+    }
+
+    long getTotalSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * Returns the files which are to be evicted, least recently used first, if the total size of
+     * all files exceeds the given limit.
+     *
+     * @param maxSize
+     *            the maximal total size of all files
+     * @param excludedPath
+     *            the path of a file which is not to be evicted, e.g. because it was just stored
+     * @return the files in eviction order; evicting all of them brings the total size below the
+     *         limit, unless they are still in use
+     */
+    List<Candidate> getEvictionCandidates(final long maxSize, final String excludedPath) {
+        long remainingSize = totalSize.get();
+        final List<Candidate> candidates = new ArrayList<Candidate>();
+        if (remainingSize <= maxSize) {
+            return candidates;
+        }
+        // ordered by a snapshot of the stamps, as archives may be accessed concurrently
+        final List<Candidate> accessOrder = new ArrayList<Candidate>(files.size());
+        for (final Map.Entry<String, TrackedFile> entry : files.entrySet()) {
+            accessOrder.add(new Candidate(entry.getKey(), entry.getValue().accessStamp));
+        }
+        Collections.sort(accessOrder, new Comparator<Candidate>() {
+            @Override
+            public int compare(final Candidate candidate1, final Candidate candidate2) {
+                return candidate1.accessStamp < candidate2.accessStamp ? -1
+                        : (candidate1.accessStamp == candidate2.accessStamp ? 0 : 1);
+            }
+        });
+        for (final Candidate candidate : accessOrder) {
+            if (remainingSize <= maxSize) {
+                break;
+            }
+            final TrackedFile trackedFile = files.get(candidate.path);
+            if (trackedFile != null && !candidate.path.equals(excludedPath)) {
+                candidates.add(candidate);
+                synchronized (trackedFile) {
+                    remainingSize -= trackedFile.size;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return <code>true</code> if the given candidate was not accessed or removed since it was
+     *         selected for eviction
+     */
+    boolean isUnchanged(final Candidate candidate) {
+        final TrackedFile trackedFile = files.get(candidate.path);
+        return trackedFile != null && trackedFile.accessStamp == candidate.accessStamp;
+    }
+}
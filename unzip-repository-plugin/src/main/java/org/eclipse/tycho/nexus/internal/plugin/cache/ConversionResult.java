@@ -22,6 +22,7 @@ public class ConversionResult {
     private final String pathUpToVersion;
     private final boolean pathConverted;
     private final boolean snapshotAvailable;
+    private volatile TokenizedPath tokenizedConvertedPath;
 
     private ConversionResult(final String originalPath, final String convertedPath, final String latestVersion,
             final String pathUpToVersion, final boolean pathConverted, final boolean snapshotAvailable) {
@@ -85,6 +86,30 @@ public class ConversionResult {
         this(originalPath, originalPath, null, pathUpToVersion, false, snapshotAvailable);
     }
 
+    /**
+     * Returns the result of the conversion of another path, which only differs from the original
+     * path of this result in its end after the virtual version. As the end is kept as it is by the
+     * conversion, the converted path is adapted in the same way.
+     * 
+     * @param otherPath
+     *            the other path
+     * @param pathEnd
+     *            the end of the original path of this result
+     * @param otherPathEnd
+     *            the end of the other path
+     * @return the result for the other path
+     */
+    ConversionResult forOtherPath(final String otherPath, final String pathEnd, final String otherPathEnd) {
+        if (!pathConverted) {
+            return new ConversionResult(otherPath, otherPath, latestVersion, pathUpToVersion, false,
+                    snapshotAvailable);
+        }
+        final String otherConvertedPath = convertedPath.substring(0, convertedPath.length() - pathEnd.length())
+                + otherPathEnd;
+        return new ConversionResult(otherPath, otherConvertedPath, latestVersion, pathUpToVersion, true,
+                snapshotAvailable);
+    }
+
     /**
      * 
      * @return <code>true</code> if the <code>maven-metadata.xml</code> file was found and thus let
@@ -120,6 +145,27 @@ public class ConversionResult {
         return convertedPath;
     }
 
+    /**
+     * 
+     * @return the converted path split into its segments, which is only tokenized once
+     */
+    public TokenizedPath getTokenizedConvertedPath() {
+        TokenizedPath path = tokenizedConvertedPath;
+        if (path == null) {
+            // tokenizing twice in concurrent calls does no harm
+            path = TokenizedPath.tokenize(convertedPath);
+            tokenizedConvertedPath = path;
+        }
+        return path;
+    }
+
+    /**
+     * Reuses the already tokenized request path if the path was not converted.
+     */
+    void setTokenizedConvertedPath(final TokenizedPath path) {
+        tokenizedConvertedPath = path;
+    }
+
     /**
      * 
      * @return the latest snapshot version or <code>null</code> if no conversion took place
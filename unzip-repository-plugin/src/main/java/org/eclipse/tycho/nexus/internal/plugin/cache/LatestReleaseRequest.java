@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
-import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.apache.maven.artifact.versioning.VersionRange;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
@@ -35,16 +34,18 @@ public class LatestReleaseRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final VersioningCache versioningCache)
+            throws LocalStorageException {
         final String requestPath = request.getRequestPath();
         try {
-            final Versioning versioning = getVersioning(repository, metadataPath(groupArtifactPath + "/"));
-            final String releaseVersion = versioning.getRelease();
+            final VersionIndex versionIndex = getVersionIndex(repository, versioningCache,
+                    metadataPath(groupArtifactPath + "/"));
+            final String releaseVersion = versionIndex.getVersioning().getRelease();
             if (releaseVersion == null) {
                 return new ConversionResult(requestPath);
             }
 
-            final String selectedVersion = selectVersion(request, versioning, versionRange, false);
+            final String selectedVersion = selectVersion(request, versionIndex, versionRange, false);
 
             final String releaseVersionDirectory = groupArtifactPath + "/" + selectedVersion + "/";
 
@@ -56,4 +57,19 @@ public class LatestReleaseRequest extends ParsedRequest {
         }
     }
 
+    @Override
+    String getVirtualPath() {
+        final String requestPath = request.getRequestPath();
+        return requestPath.substring(0, requestPath.length() - artifactNameEnd.length());
+    }
+
+    @Override
+    String getPathEnd() {
+        return artifactNameEnd;
+    }
+
+    @Override
+    String getMetadataFolder() {
+        return groupArtifactPath + "/";
+    }
 }
@@ -53,16 +53,18 @@ public class LatestVersionRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final VersioningCache versioningCache)
+            throws LocalStorageException {
         final String requestPath = request.getRequestPath();
         try {
-            final Versioning versioning = getVersioning(repository, metadataPath(groupArtifactPath + "/"));
+            final VersionIndex versionIndex = getVersionIndex(repository, versioningCache,
+                    metadataPath(groupArtifactPath + "/"));
 
-            final String selectedVersion = selectVersion(request, versioning, versionRange, true);
+            final String selectedVersion = selectVersion(request, versionIndex, versionRange, true);
             final String latestVersionDirectory = groupArtifactPath + "/" + selectedVersion + "/";
 
             if (selectedVersion.endsWith("-SNAPSHOT")) {
-                return resolveSnapshot(repository, selectedVersion, latestVersionDirectory);
+                return resolveSnapshot(repository, versioningCache, selectedVersion, latestVersionDirectory);
             }
 
             final String pathUpToVersion = latestVersionDirectory + artifactNameStart + "-" + selectedVersion;
@@ -73,9 +75,9 @@ public class LatestVersionRequest extends ParsedRequest {
         }
     }
 
-    private ConversionResult resolveSnapshot(final Repository repository, final String latestVersion,
-            final String latestVersionDirectory) throws LocalStorageException, ItemNotFoundException {
-        final Versioning snapshotVersioning = getVersioning(repository, metadataPath(latestVersionDirectory));
+    private ConversionResult resolveSnapshot(final Repository repository, final VersioningCache versioningCache,
+            final String latestVersion, final String latestVersionDirectory) throws LocalStorageException, ItemNotFoundException {
+        final Versioning snapshotVersioning = getVersioning(repository, versioningCache, metadataPath(latestVersionDirectory));
         final Snapshot current = snapshotVersioning.getSnapshot();
         final String latestTimestampVersion;
         if (current != null) {
@@ -92,4 +94,19 @@ public class LatestVersionRequest extends ParsedRequest {
                 + latestTimestampVersion, pathUpToVersion);
     }
 
+    @Override
+    String getVirtualPath() {
+        final String requestPath = request.getRequestPath();
+        return requestPath.substring(0, requestPath.length() - artifactNameEnd.length());
+    }
+
+    @Override
+    String getPathEnd() {
+        return artifactNameEnd;
+    }
+
+    @Override
+    String getMetadataFolder() {
+        return groupArtifactPath + "/";
+    }
 }
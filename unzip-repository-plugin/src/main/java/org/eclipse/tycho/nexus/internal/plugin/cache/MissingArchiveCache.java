@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Remembers the paths of archives which were not found in the master repository, so that repeated
+ * requests for the content of a missing archive, e.g. for checksums of entries or for optional
+ * classifiers, are answered without asking the master repository again.
+ * <p>
+ * The not found cache settings of the unzip repository apply: paths are only remembered if the
+ * cache is active, and only for the configured time to live. Paths are forgotten earlier if the
+ * repository is notified about a change of the item or one of its folders, see
+ * {@link #invalidate(String, boolean)}, and the least recently used paths are dropped once the
+ * maximal number of paths is reached.
+ */
+class MissingArchiveCache {
+
+    private static final int DEFAULT_MAX_PATHS = 10000;
+    // token of a lookup which is not tracked, because the not found cache is inactive
+    private static final long UNTRACKED = -1;
+
+    /**
+     * The lookups of a path which are currently running in the master repository.
+     */
+    private static class RunningLookups {
+        private int count;
+        // incremented on every invalidation of the path, so that a miss found before is not remembered
+        private long invalidationCount;
+    }
+
+    private final Repository repository;
+    // expiry time in nanoseconds by path, in access order
+    private final Map<String, Long> missingPaths;
+    private final Map<String, RunningLookups> runningLookups = new HashMap<String, RunningLookups>();
+    // checked without the lock, so that the events of unrelated items do not contend for it
+    private volatile boolean empty = true;
+
+    MissingArchiveCache(final Repository repository) {
+        this(repository, DEFAULT_MAX_PATHS);
+    }
+
+    MissingArchiveCache(final Repository repository, final int maxPaths) {
+        this.repository = repository;
+        this.missingPaths = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                return size() > maxPaths;
+            }
+        };
+    }
+
+    /**
+     * @return whether the archive with the given path was not found in the master repository
+     *         within the time to live
+     */
+    boolean isMissing(final String zipItemPath) {
+        if (empty) {
+            return false;
+        }
+        synchronized (this) {
+            final Long expiryTime = missingPaths.get(zipItemPath);
+            if (expiryTime == null) {
+                return false;
+            }
+            if (System.nanoTime() - expiryTime >= 0) {
+                missingPaths.remove(zipItemPath);
+                updateEmpty();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Registers a lookup of the archive with the given path in the master repository and returns a
+     * token to be passed to {@link #add(String, long)}. Must be called before the archive is looked
+     * up, and must be followed by {@link #endLookup(String)}.
+     */
+    long startLookup(final String zipItemPath) {
+        if (!isActive()) {
+            return UNTRACKED;
+        }
+        synchronized (this) {
+            RunningLookups lookups = runningLookups.get(zipItemPath);
+            if (lookups == null) {
+                lookups = new RunningLookups();
+                runningLookups.put(zipItemPath, lookups);
+                empty = false;
+            }
+            lookups.count++;
+            return lookups.invalidationCount;
+        }
+    }
+
+    /**
+     * Unregisters a lookup registered with {@link #startLookup(String)}.
+     */
+    void endLookup(final String zipItemPath) {
+        if (empty) {
+            return;
+        }
+        synchronized (this) {
+            final RunningLookups lookups = runningLookups.get(zipItemPath);
+            if (lookups != null && --lookups.count == 0) {
+                runningLookups.remove(zipItemPath);
+                updateEmpty();
+            }
+        }
+    }
+
+    /**
+     * Remembers that the archive with the given path was not found, unless the not found cache of
+     * the repository is inactive or the archive was invalidated since the lookup was started with
+     * {@link #startLookup(String)}.
+     */
+    void add(final String zipItemPath, final long readToken) {
+        if (readToken == UNTRACKED || !isActive()) {
+            return;
+        }
+        final long expiryTime = System.nanoTime()
+                + TimeUnit.MINUTES.toNanos(repository.getNotFoundCacheTimeToLive());
+        synchronized (this) {
+            // checked under the lock, as invalidations mark the running lookups under the lock
+            final RunningLookups lookups = runningLookups.get(zipItemPath);
+            if (lookups != null && lookups.invalidationCount == readToken) {
+                missingPaths.put(zipItemPath, expiryTime);
+                empty = false;
+            }
+        }
+    }
+
+    /**
+     * Forgets the archives affected by a change of the given item, and prevents that running
+     * lookups of these archives remember a miss. As the master repository may be a group, items of
+     * all repositories are considered.
+     *
+     * @param itemPath
+     *            the path of the created, changed or deleted item
+     * @param collection
+     *            whether the item is a folder, in which case all archives below are forgotten
+     */
+    void invalidate(final String itemPath, final boolean collection) {
+        if (empty) {
+            return;
+        }
+        synchronized (this) {
+            if (collection) {
+                final String prefix = itemPath.endsWith("/") ? itemPath : itemPath + "/";
+                for (final Iterator<String> paths = missingPaths.keySet().iterator(); paths.hasNext();) {
+                    if (paths.next().startsWith(prefix)) {
+                        paths.remove();
+                    }
+                }
+                for (final Map.Entry<String, RunningLookups> lookups : runningLookups.entrySet()) {
+                    if (lookups.getKey().startsWith(prefix)) {
+                        lookups.getValue().invalidationCount++;
+                    }
+                }
+            } else {
+                missingPaths.remove(itemPath);
+                final RunningLookups lookups = runningLookups.get(itemPath);
+                if (lookups != null) {
+                    lookups.invalidationCount++;
+                }
+            }
+            updateEmpty();
+        }
+    }
+
+    private boolean isActive() {
+        return repository.isNotFoundCacheActive() && repository.getNotFoundCacheTimeToLive() > 0;
+    }
+
+    private void updateEmpty() {
+        empty = missingPaths.isEmpty() && runningLookups.isEmpty();
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,14 +11,9 @@
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Versioning;
-import org.apache.maven.artifact.versioning.ArtifactVersion;
-import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.artifact.versioning.VersionRange;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
@@ -29,29 +24,90 @@ import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataBuilder;
 import org.sonatype.nexus.proxy.repository.Repository;
 
 abstract class ParsedRequest {
-    private static final String MAVEN_METADATA_XML = "maven-metadata.xml";
+    static final String MAVEN_METADATA_XML = "maven-metadata.xml";
 
-    abstract ConversionResult resolve(final Repository repository) throws LocalStorageException;
+    abstract ConversionResult resolve(final Repository repository, final VersioningCache versioningCache)
+            throws LocalStorageException;
 
-    Versioning getVersioning(final Repository repository, final String mdPath) throws LocalStorageException,
-            ItemNotFoundException {
+    /**
+     * Returns the request path up to the end of the virtual version in the artifact name. Requests
+     * for all paths into the same artifact share this path and are resolved in the same way. As the
+     * path contains the version range of the keyword folder, requests with different ranges do not.
+     * 
+     * @return the path up to the virtual version, or <code>null</code> if the request does not
+     *         contain a virtual version
+     */
+    String getVirtualPath() {
+        return null;
+    }
+
+    /**
+     * @return the rest of the request path after the virtual path
+     */
+    String getPathEnd() {
+        return null;
+    }
+
+    /**
+     * @return the folder containing all maven-metadata.xml files the request is resolved with
+     */
+    String getMetadataFolder() {
+        return null;
+    }
+
+    /**
+     * Returns the versioning information of the given metadata file, from the given cache if
+     * possible.
+     * 
+     * @param versioningCache
+     *            the cache of versioning information, or <code>null</code> if the metadata file is
+     *            to be read in any case
+     */
+    Versioning getVersioning(final Repository repository, final VersioningCache versioningCache,
+            final String mdPath) throws LocalStorageException, ItemNotFoundException {
+        final VersionIndex versionIndex = getVersionIndex(repository, versioningCache, mdPath);
+        return versionIndex == null ? null : versionIndex.getVersioning();
+    }
+
+    /**
+     * Returns the versioning information of the given metadata file together with its sorted
+     * versions, from the given cache if possible, so that the versions are only sorted once.
+     * 
+     * @param versioningCache
+     *            the cache of versioning information, or <code>null</code> if the metadata file is
+     *            to be read in any case
+     * @return the index of the versions, or <code>null</code> if the metadata file does not
+     *         contain versioning information
+     */
+    VersionIndex getVersionIndex(final Repository repository, final VersioningCache versioningCache,
+            final String mdPath) throws LocalStorageException, ItemNotFoundException {
+        if (versioningCache == null) {
+            final Versioning versioning = readVersioning(repository, mdPath);
+            return versioning == null ? null : new VersionIndex(versioning);
+        }
+        final VersionIndex cachedVersionIndex = versioningCache.get(repository, mdPath);
+        if (cachedVersionIndex != null) {
+            return cachedVersionIndex;
+        }
+        return versioningCache.read(repository, mdPath);
+    }
+
+    static Versioning readVersioning(final Repository repository, final String mdPath)
+            throws LocalStorageException, ItemNotFoundException {
         final ResourceStoreRequest request = new ResourceStoreRequest(mdPath);
-        final PathLock.PathLockMonitor pathLock = PathLock.getLock(mdPath);
         try {
-            synchronized (pathLock) {
-                final StorageItem mdItem = repository.retrieveItem(request);
-                if (mdItem instanceof StorageFileItem) {
-                    final InputStream is = ((StorageFileItem) mdItem).getInputStream();
-                    try {
-                        final Metadata md = MetadataBuilder.read(is);
-                        return md.getVersioning();
-                    } finally {
-                        is.close();
-                    }
-                } else {
-                    throw new LocalStorageException(mdPath + " is not an StorageFileItem in repository "
-                            + repository.getId());
+            final StorageItem mdItem = repository.retrieveItem(request);
+            if (mdItem instanceof StorageFileItem) {
+                final InputStream is = ((StorageFileItem) mdItem).getInputStream();
+                try {
+                    final Metadata md = MetadataBuilder.read(is);
+                    return md.getVersioning();
+                } finally {
+                    is.close();
                 }
+            } else {
+                throw new LocalStorageException(mdPath + " is not an StorageFileItem in repository "
+                        + repository.getId());
             }
         } catch (final ItemNotFoundException e) {
             /*
@@ -61,53 +117,22 @@ abstract class ParsedRequest {
             throw e;
         } catch (final Exception e) {
             throw new LocalStorageException(e);
-        } finally {
-            PathLock.releaseLock(pathLock);
         }
     }
 
-    String selectVersion(final ResourceStoreRequest request, final Versioning versioning,
+    String selectVersion(final ResourceStoreRequest request, final VersionIndex versionIndex,
             final VersionRange versionRange, final boolean findSnapshots) throws ItemNotFoundException {
         // do not rely on LATEST and RELEASE tag, because they not necessarily correspond to highest version number
-        String selectedVersion = getLatestVersion(request, versioning, findSnapshots);
-
-        if (versionRange != null && !versionRange.containsVersion(new DefaultArtifactVersion(selectedVersion))) {
-            final List<ArtifactVersion> versions = new ArrayList<ArtifactVersion>();
-            for (final String artifactVersion : versioning.getVersions()) {
-                if (findSnapshots || !artifactVersion.endsWith("-SNAPSHOT")) {
-                    versions.add(new DefaultArtifactVersion(artifactVersion));
-                }
-            }
-            final ArtifactVersion matchedVersion = versionRange.matchVersion(versions);
-            if (matchedVersion != null) {
-                selectedVersion = matchedVersion.toString();
-            } else {
-                throw new ItemNotFoundException(ItemNotFoundException.reasonFor(request,
-                        "No version found within range"));
-
-            }
-        }
-        return selectedVersion;
-    }
-
-    private static String getLatestVersion(final ResourceStoreRequest request, final Versioning versioning,
-            final boolean findSnapshots) throws ItemNotFoundException {
-        final List<ArtifactVersion> artifactVersions = new ArrayList<ArtifactVersion>();
-        for (final String version : versioning.getVersions()) {
-            if (!findSnapshots && !version.trim().endsWith("-SNAPSHOT")) {
-                artifactVersions.add(new DefaultArtifactVersion(version));
-            } else if (findSnapshots) {
-                artifactVersions.add(new DefaultArtifactVersion(version));
-            }
-        }
-
-        ArtifactVersion maxVersion = null;
-        if (artifactVersions.isEmpty()) {
+        if (!versionIndex.hasVersions(findSnapshots)) {
             throw new ItemNotFoundException(ItemNotFoundException.reasonFor(request,
                     "maven-metadata.xml does not contain any version"));
         }
-        maxVersion = Collections.max(artifactVersions);
-        return ((DefaultArtifactVersion) maxVersion).toString();
+        final String selectedVersion = versionIndex.getLatestVersion(versionRange, findSnapshots);
+        if (selectedVersion == null) {
+            throw new ItemNotFoundException(ItemNotFoundException.reasonFor(request,
+                    "No version found within range"));
+        }
+        return selectedVersion;
     }
 
     String metadataPath(final String path) {
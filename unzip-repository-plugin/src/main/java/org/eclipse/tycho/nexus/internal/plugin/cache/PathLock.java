@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,72 +10,60 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Lock utility class to work around https://issues.sonatype.org/browse/NEXUS-3622
+ * <p>
+ * Hands out a read/write lock per path. Readers of a path only block each other if a writer is
+ * active on the same path. Locks are registered on demand and removed again as soon as nobody
+ * holds them, without any global monitor.
  */
 class PathLock {
-    private static final Map<String, PathLock> lockMap = new HashMap<String, PathLock>();
+    private static final ConcurrentMap<String, PathLockMonitor> lockMap =
+            new ConcurrentHashMap<String, PathLockMonitor>();
 
+    /**
+     * Returns the lock of the given path. Every call must be followed by a call of
+     * {@link #releaseLock(PathLockMonitor)} once the lock is not needed anymore.
+     */
     static PathLockMonitor getLock(final String mdPath) {
-        PathLock ret = null;
-        synchronized (lockMap) {
-            ret = lockMap.get(mdPath);
-            if (ret == null) {
-                ret = new PathLock(mdPath);
-                lockMap.put(mdPath, ret);
-            }
-            ret.inc();
-        }
-        return ret.getLock();
-    }
-
-    private static boolean releaseLock(final String mdPath) {
-        synchronized (lockMap) {
-            final PathLock lock = lockMap.get(mdPath);
-            if (lock != null) {
-                lock.dec();
-                if (lock.getCount() <= 0) {
-                    lockMap.remove(mdPath);
+        while (true) {
+            PathLockMonitor lock = lockMap.get(mdPath);
+            if (lock == null) {
+                final PathLockMonitor newLock = new PathLockMonitor(mdPath);
+                lock = lockMap.putIfAbsent(mdPath, newLock);
+                if (lock == null) {
+                    lock = newLock;
                 }
-            } else {
-                return false;
             }
+            if (lock.retain()) {
+                return lock;
+            }
+            // the lock was just released by its last user and is about to be removed
+            lockMap.remove(mdPath, lock);
         }
-        return true;
     }
 
     static boolean releaseLock(final PathLockMonitor lock) {
-        return releaseLock(lock.getPath());
-    }
-
-    PathLock(final String path) {
-        this.lock = new PathLockMonitor(path);
-    }
-
-    PathLockMonitor lock;
-    int count = 0;
-
-    private PathLockMonitor getLock() {
-        return lock;
-    }
-
-    private synchronized int getCount() {
-        return count;
+        return lock.release();
     }
 
-    private synchronized void inc() {
-        count++;
-    }
-
-    private synchronized void dec() {
-        count--;
+    /**
+     * @return the number of paths for which a lock is currently registered
+     */
+    static int getRegisteredLockCount() {
+        return lockMap.size();
     }
 
     static class PathLockMonitor {
         private final String path;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // number of users; -1 once the monitor is removed from the registry
+        private final AtomicInteger count = new AtomicInteger();
 
         public PathLockMonitor(final String path) {
             super();
@@ -86,6 +74,55 @@ class PathLock {
             return path;
         }
 
+        /**
+         * Acquires the lock for reading the path. Blocks only while a writer holds the lock.
+         */
+        public void lockShared() {
+            lock.readLock().lock();
+        }
+
+        public void unlockShared() {
+            lock.readLock().unlock();
+        }
+
+        /**
+         * Acquires the lock for modifying the path. Blocks while any reader or writer holds the
+         * lock.
+         */
+        public void lockExclusive() {
+            lock.writeLock().lock();
+        }
+
+        public void unlockExclusive() {
+            lock.writeLock().unlock();
+        }
+
+        private boolean retain() {
+            while (true) {
+                final int current = count.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean release() {
+            while (true) {
+                final int current = count.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current - 1)) {
+                    if (current == 1 && count.compareAndSet(0, -1)) {
+                        lockMap.remove(path, this);
+                    }
+                    return true;
+                }
+            }
+        }
     }
 
 }
@@ -10,10 +10,7 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.artifact.versioning.VersionRange;
 import org.sonatype.nexus.proxy.IllegalRequestException;
 import org.sonatype.nexus.proxy.LocalStorageException;
@@ -21,10 +18,6 @@ import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.repository.Repository;
 
 public class RequestPathConverter {
-    private static final Pattern SNAPSHOT_PATTERN = Pattern
-            .compile("^(.*/(?:\\d*\\.?)+(?:-\\w+)*-SNAPSHOT/)([^/]*-)SNAPSHOT[^/]");
-    private static final Pattern LATESTVERSION_PATTERN = Pattern.compile("/SNAPSHOT/([^/]*)-SNAPSHOT[^/]");
-    private static final Pattern RELEASE_PATTERN = Pattern.compile("/RELEASE/([^/]*)-RELEASE[^/]");
 
     /**
      * Converts the path to an artifact. The following requests are possible:
@@ -35,6 +28,9 @@ public class RequestPathConverter {
      * <li>The latest build identifier for a given SNAPSHOT-version, requested with the version
      * <code>x.y.z-SNAPSHOT</code></li>
      * </ul>
+     * The latest (released) version can be restricted to a Maven version range appended to the
+     * keyword folder, e.g. <code>/ga/RELEASE[1.0,2.0)/archive-RELEASE.zip</code>.
+     * <p>
      * Returns an unchanged path in case the provided path does not match the request structure.
      * 
      * @param repository
@@ -47,48 +43,113 @@ public class RequestPathConverter {
      * 
      * @throws LocalStorageException
      * @throws IllegalRequestException
-     *             if the range parameter of the request url cannot be parsed according Maven
+     *             if the version range of the keyword folder cannot be parsed according Maven
      *             version range spec
      */
     public static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
             final boolean useVirtualVersions) throws LocalStorageException, IllegalRequestException {
-        final ParsedRequest parsedRequest = parseRequest(request, useVirtualVersions);
-        return parsedRequest.resolve(repository);
+        return convert(repository, request, useVirtualVersions, null);
+    }
+
+    /**
+     * Converts the path to an artifact like {@link #convert(Repository, ResourceStoreRequest, boolean)}
+     * , but reuses the versioning information of maven-metadata.xml files from the given cache, and
+     * the resolved versions if the unzip repository is configured so.
+     * 
+     * @param versioningCache
+     *            the cache of versioning information, or <code>null</code> if the metadata files
+     *            are to be read for every request
+     */
+    public static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
+            final boolean useVirtualVersions, final VersioningCache versioningCache) throws LocalStorageException,
+            IllegalRequestException {
+        final TokenizedPath requestPath = TokenizedPath.tokenize(request.getRequestPath());
+        final ParsedRequest parsedRequest = parseRequest(request, requestPath, useVirtualVersions);
+        final ConversionResult conversionResult;
+        if (versioningCache == null) {
+            conversionResult = parsedRequest.resolve(repository, null);
+        } else {
+            conversionResult = versioningCache.resolve(repository, parsedRequest, requestPath.getPath());
+        }
+        if (!conversionResult.isPathConverted()) {
+            conversionResult.setTokenizedConvertedPath(requestPath);
+        }
+        return conversionResult;
     }
 
-    private static ParsedRequest parseRequest(final ResourceStoreRequest request, final boolean useVirtualVersions) {
+    /**
+     * Converts the path to an artifact like
+     * {@link #convert(Repository, ResourceStoreRequest, boolean, VersioningCache)}, but converts
+     * every path only once per request.
+     * 
+     * @param context
+     *            the resolution context of the request
+     */
+    public static ConversionResult convert(final Repository repository, final ResourceStoreRequest request,
+            final boolean useVirtualVersions, final VersioningCache versioningCache, final ResolutionContext context)
+            throws LocalStorageException, IllegalRequestException {
         final String requestPath = request.getRequestPath();
+        ConversionResult conversionResult = context.getConversionResult(requestPath);
+        if (conversionResult == null) {
+            conversionResult = convert(repository, request, useVirtualVersions, versioningCache);
+            context.putConversionResult(requestPath, conversionResult);
+        }
+        return conversionResult;
+    }
+
+    /**
+     * Classifies the request on the segments of its path. The patterns are checked in the
+     * following order:
+     * <ul>
+     * <li>the last snapshot version folder followed by an artifact name containing
+     * <code>-SNAPSHOT</code>, e.g. <code>/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip</code></li>
+     * <li>the first <code>SNAPSHOT</code> folder followed by an artifact name containing
+     * <code>-SNAPSHOT</code>, e.g. <code>/ga/SNAPSHOT/archive-SNAPSHOT.zip</code></li>
+     * <li>the first <code>RELEASE</code> folder followed by an artifact name containing
+     * <code>-RELEASE</code>, e.g. <code>/ga/RELEASE/archive-RELEASE.zip</code></li>
+     * </ul>
+     * In the artifact name, the last occurrence of the keyword which is followed by at least one
+     * other character is replaced.
+     */
+    private static ParsedRequest parseRequest(final ResourceStoreRequest request, final TokenizedPath path,
+            final boolean useVirtualVersions) throws IllegalRequestException {
+        final String requestPath = path.getPath();
 
         if (useVirtualVersions) {
-            final Matcher snapshotVersionMatcher = SNAPSHOT_PATTERN.matcher(requestPath);
-            if (snapshotVersionMatcher.find()) {
-                final MatchResult versionFolderMatchResult = snapshotVersionMatcher.toMatchResult();
-                final String pathToSnapshotArtifact = versionFolderMatchResult.group(1);
-                final String pathUpToVersion = pathToSnapshotArtifact + versionFolderMatchResult.group(2);
-                final String artifactNameEnd = requestPath.substring(versionFolderMatchResult.end() - 1);
+            final int versionFolder = path.findSnapshotVersionFolder();
+            if (versionFolder >= 0) {
+                final int keyword = path.findKeywordInName(versionFolder + 1, TokenizedPath.SNAPSHOT);
+                final String pathToSnapshotArtifact = requestPath.substring(0,
+                        path.getSegmentEnd(versionFolder) + 1);
+                final String pathUpToVersion = requestPath.substring(0, keyword + 1);
+                final String artifactNameEnd = requestPath.substring(keyword + 1 + TokenizedPath.SNAPSHOT.length());
                 return new SnapshotRequest(requestPath, pathUpToVersion, pathToSnapshotArtifact, artifactNameEnd);
             }
-            final Matcher latestVersionMatcher = LATESTVERSION_PATTERN.matcher(requestPath);
-            if (latestVersionMatcher.find()) {
-
-                final MatchResult matchResult = latestVersionMatcher.toMatchResult();
-                final String groupArtifactPath = requestPath.substring(0, matchResult.start());
-                final String artifactNameStart = matchResult.group(1);
-                final String artifactNameEnd = requestPath.substring(matchResult.end() - 1);
+            final int latestVersionFolder = path.findKeywordFolder(TokenizedPath.SNAPSHOT);
+            if (latestVersionFolder >= 0) {
+                final int keyword = path.findKeywordInName(latestVersionFolder + 1, TokenizedPath.SNAPSHOT);
+                final String groupArtifactPath = requestPath.substring(0,
+                        path.getSegmentStart(latestVersionFolder) - 1);
+                final String artifactNameStart = requestPath.substring(path.getSegmentStart(latestVersionFolder + 1),
+                        keyword);
+                final String artifactNameEnd = requestPath.substring(keyword + 1 + TokenizedPath.SNAPSHOT.length());
 
-                final VersionRange versionRange = parseVersionRange(request);
+                final VersionRange versionRange = parseVersionRange(request,
+                        path.getVersionRangeSpec(latestVersionFolder, TokenizedPath.SNAPSHOT));
 
                 return new LatestVersionRequest(request, groupArtifactPath, artifactNameStart, artifactNameEnd,
                         versionRange);
             }
 
-            final Matcher releaseVersionMatcher = RELEASE_PATTERN.matcher(requestPath);
-            if (releaseVersionMatcher.find()) {
-                final MatchResult matchResult = releaseVersionMatcher.toMatchResult();
-                final String groupArtifactPath = requestPath.substring(0, matchResult.start());
-                final String artifactNameStart = matchResult.group(1);
-                final String artifactNameEnd = requestPath.substring(matchResult.end() - 1);
-                final VersionRange versionRange = parseVersionRange(request);
+            final int releaseFolder = path.findKeywordFolder(TokenizedPath.RELEASE);
+            if (releaseFolder >= 0) {
+                final int keyword = path.findKeywordInName(releaseFolder + 1, TokenizedPath.RELEASE);
+                final String groupArtifactPath = requestPath.substring(0, path.getSegmentStart(releaseFolder) - 1);
+                final String artifactNameStart = requestPath.substring(path.getSegmentStart(releaseFolder + 1),
+                        keyword);
+                final String artifactNameEnd = requestPath.substring(keyword + 1 + TokenizedPath.RELEASE.length());
+                final VersionRange versionRange = parseVersionRange(request,
+                        path.getVersionRangeSpec(releaseFolder, TokenizedPath.RELEASE));
                 return new LatestReleaseRequest(request, groupArtifactPath, artifactNameStart, artifactNameEnd,
                         versionRange);
             }
@@ -96,8 +157,16 @@ public class RequestPathConverter {
         return new UnchangedRequest(requestPath);
     }
 
-    private static VersionRange parseVersionRange(final ResourceStoreRequest request) {
-        // TODO: create versionRange form requestUrl. 
-        return null;
+    private static VersionRange parseVersionRange(final ResourceStoreRequest request, final String rangeSpec)
+            throws IllegalRequestException {
+        if (rangeSpec == null) {
+            return null;
+        }
+        // the spec starts with a bracket, so it is never a plain version, which would match every version
+        try {
+            return VersionRange.createFromVersionSpec(rangeSpec);
+        } catch (final InvalidVersionSpecificationException e) {
+            throw new IllegalRequestException(request, "Invalid version range " + rangeSpec + ": " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.tycho.nexus.internal.plugin.cache.UnzipCache.ArchiveFile;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipArchiveIndex;
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Remembers what was resolved while serving one request to an unzip repository: the converted
+ * request paths, the archives and their indexes. The items created for the request and their child
+ * items thereby do not resolve the same again. The context is kept in the {@link RequestContext}
+ * of the request and is found from the request contexts of child items through their parent
+ * context. It lives only as long as the request, so it is never invalidated.
+ * <p>
+ * A group repository passes the same request to all its members. Each unzip repository therefore
+ * keeps its own context in the request, so that repositories with different master repositories
+ * do not share converted paths or archives.
+ */
+public class ResolutionContext {
+
+    private static final String CONTEXT_KEY = ResolutionContext.class.getName();
+
+    private final ConcurrentMap<String, ConversionResult> conversionResults =
+            new ConcurrentHashMap<String, ConversionResult>();
+    private final ConcurrentMap<String, ArchiveFile> archives = new ConcurrentHashMap<String, ArchiveFile>();
+    private final ConcurrentMap<String, ZipArchiveIndex> indexes = new ConcurrentHashMap<String, ZipArchiveIndex>();
+
+    /**
+     * Returns the resolution context of the given repository for the request with the given request
+     * context. The context is created if neither the given request context nor one of its parents
+     * holds one for the repository yet.
+     *
+     * @param requestContext
+     *            the context of the request or of a child item of the request
+     * @param repository
+     *            the unzip repository serving the request
+     * @return the resolution context, never <code>null</code>
+     */
+    public static ResolutionContext get(final RequestContext requestContext, final Repository repository) {
+        final String contextKey = CONTEXT_KEY + "#" + repository.getId();
+        synchronized (requestContext) {
+            // falls back to the parent contexts
+            ResolutionContext context = (ResolutionContext) requestContext.get(contextKey);
+            if (context == null) {
+                context = new ResolutionContext();
+                requestContext.put(contextKey, context);
+            }
+            return context;
+        }
+    }
+
+    ConversionResult getConversionResult(final String requestPath) {
+        return conversionResults.get(requestPath);
+    }
+
+    void putConversionResult(final String requestPath, final ConversionResult conversionResult) {
+        conversionResults.put(requestPath, conversionResult);
+    }
+
+    ArchiveFile getArchive(final String zipItemPath) {
+        return archives.get(zipItemPath);
+    }
+
+    void putArchive(final String zipItemPath, final ArchiveFile archive) {
+        archives.put(zipItemPath, archive);
+    }
+
+    ZipArchiveIndex getIndex(final String zipItemPath) {
+        return indexes.get(zipItemPath);
+    }
+
+    void putIndex(final String zipItemPath, final ZipArchiveIndex index) {
+        indexes.put(zipItemPath, index);
+    }
+
+    /**
+     * Forgets the given archive, e.g. because it was deleted before it could be opened.
+     */
+    void removeArchive(final String zipItemPath) {
+        archives.remove(zipItemPath);
+        indexes.remove(zipItemPath);
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The timestamp and build number of a deployed snapshot artifact, e.g.
+ * <code>20110718.111322-2</code>. Builds are ordered from the oldest to the most recent one.
+ */
+class SnapshotBuild implements Comparable<SnapshotBuild> {
+
+    // at the start of the artifact name after the version, optionally after the separating dash
+    private static final Pattern BUILD_PATTERN = Pattern.compile("^-?(\\d+(?:\\.\\d+)?)-(\\d{1,18})(?!\\d)");
+
+    private final String timestamp;
+    private final long buildNumber;
+
+    private SnapshotBuild(final String timestamp, final long buildNumber) {
+        this.timestamp = timestamp;
+        this.buildNumber = buildNumber;
+    }
+
+    /**
+     * @param artifactPath
+     *            the path of a snapshot artifact
+     * @param pathUpToVersion
+     *            the path of the artifacts up to the timestamp of the build
+     * @return the build of the artifact, or <code>null</code> if the path is not the one of a
+     *         timestamped snapshot artifact
+     */
+    static SnapshotBuild parse(final String artifactPath, final String pathUpToVersion) {
+        if (!artifactPath.startsWith(pathUpToVersion)) {
+            return null;
+        }
+        final Matcher matcher = BUILD_PATTERN.matcher(artifactPath.substring(pathUpToVersion.length()));
+        if (!matcher.find()) {
+            return null;
+        }
+        return new SnapshotBuild(matcher.group(1), Long.parseLong(matcher.group(2)));
+    }
+
+    /**
+     * Removes the artifacts of the given number of most recent builds from the given artifact
+     * paths.
+     *
+     * @param artifactPaths
+     *            the paths of outdated snapshot artifacts
+     * @param pathUpToVersion
+     *            the path of the artifacts up to the timestamp of the build
+     * @param count
+     *            the number of builds to be retained
+     */
+    static void retainMostRecent(final List<String> artifactPaths, final String pathUpToVersion, final int count) {
+        if (count <= 0) {
+            return;
+        }
+        final TreeMap<SnapshotBuild, List<String>> pathsByBuild = new TreeMap<SnapshotBuild, List<String>>();
+        for (final String artifactPath : artifactPaths) {
+            final SnapshotBuild build = parse(artifactPath, pathUpToVersion);
+            if (build != null) {
+                List<String> paths = pathsByBuild.get(build);
+                if (paths == null) {
+                    paths = new ArrayList<String>();
+                    pathsByBuild.put(build, paths);
+                }
+                paths.add(artifactPath);
+            }
+        }
+        final Iterator<Map.Entry<SnapshotBuild, List<String>>> mostRecentFirst = pathsByBuild.descendingMap()
+                .entrySet().iterator();
+        for (int i = 0; i < count && mostRecentFirst.hasNext(); i++) {
+            artifactPaths.removeAll(mostRecentFirst.next().getValue());
+        }
+    }
+
+    @Override
+    public int compareTo(final SnapshotBuild other) {
+        final int timestampOrder = timestamp.compareTo(other.timestamp);
+        if (timestampOrder != 0) {
+            return timestampOrder;
+        }
+        return buildNumber < other.buildNumber ? -1 : (buildNumber == other.buildNumber ? 0 : 1);
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "-" + buildNumber;
+    }
+}
@@ -31,11 +31,12 @@ public class SnapshotRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final VersioningCache versioningCache)
+            throws LocalStorageException {
         String latestSnapshotVersion;
 
         try {
-            latestSnapshotVersion = getLatestSnapshotVersion(repository);
+            latestSnapshotVersion = getLatestSnapshotVersion(repository, versioningCache);
         } catch (final ItemNotFoundException e) {
             return new ConversionResult(requestPath, pathUpToVersion, false);
         }
@@ -48,10 +49,25 @@ public class SnapshotRequest extends ParsedRequest {
         }
     }
 
-    private String getLatestSnapshotVersion(final Repository repository) throws LocalStorageException,
-            ItemNotFoundException {
+    @Override
+    String getVirtualPath() {
+        return requestPath.substring(0, requestPath.length() - artifactNameEnd.length());
+    }
+
+    @Override
+    String getPathEnd() {
+        return artifactNameEnd;
+    }
+
+    @Override
+    String getMetadataFolder() {
+        return pathToSnapshotArtifact;
+    }
+
+    private String getLatestSnapshotVersion(final Repository repository, final VersioningCache versioningCache)
+            throws LocalStorageException, ItemNotFoundException {
         final String mdPath = metadataPath(pathToSnapshotArtifact);
-        final Versioning mdVersioning = getVersioning(repository, mdPath);
+        final Versioning mdVersioning = getVersioning(repository, versioningCache, mdPath);
         if (mdVersioning != null) {
             final Snapshot current = mdVersioning.getSnapshot();
             if (current != null) {
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+
+/**
+ * A request path split into its segments in a single pass over the path. Only the offsets of the
+ * slashes are recorded; the path is classified on these offsets, so that neither regular
+ * expressions nor substrings are needed to find out whether the path contains a virtual version
+ * or points into a zip file.
+ * <p>
+ * The segment with index <code>k</code> is the text between the <code>k</code>-th slash and the
+ * next one. Segment 0 is the text before the first slash, which is empty for absolute paths.
+ */
+public final class TokenizedPath {
+
+    static final String SNAPSHOT = "SNAPSHOT";
+    static final String RELEASE = "RELEASE";
+
+    private final String path;
+    private final int[] slashes;
+    private final int slashCount;
+    // index of the first segment which ends with -unzip, or -1
+    private final int unzipSegment;
+
+    private TokenizedPath(final String path, final int[] slashes, final int slashCount, final int unzipSegment) {
+        this.path = path;
+        this.slashes = slashes;
+        this.slashCount = slashCount;
+        this.unzipSegment = unzipSegment;
+    }
+
+    /**
+     * Splits the given path into its segments.
+     *
+     * @param path
+     *            the request path
+     * @return the tokenized path
+     */
+    public static TokenizedPath tokenize(final String path) {
+        int[] slashes = new int[16];
+        int slashCount = 0;
+        int unzipSegment = -1;
+        final int length = path.length();
+        for (int i = 0; i < length; i++) {
+            if (path.charAt(i) == '/') {
+                if (unzipSegment < 0 && endsWithUnzipExtension(path, i)) {
+                    unzipSegment = slashCount;
+                }
+                if (slashCount == slashes.length) {
+                    final int[] grown = new int[slashCount * 2];
+                    System.arraycopy(slashes, 0, grown, 0, slashCount);
+                    slashes = grown;
+                }
+                slashes[slashCount++] = i;
+            }
+        }
+        if (unzipSegment < 0 && endsWithUnzipExtension(path, length)) {
+            unzipSegment = slashCount;
+        }
+        return new TokenizedPath(path, slashes, slashCount, unzipSegment);
+    }
+
+    private static boolean endsWithUnzipExtension(final String path, final int end) {
+        final int start = end - Util.UNZIP_TYPE_EXTENSION.length();
+        return start >= 0 && path.startsWith(Util.UNZIP_TYPE_EXTENSION, start);
+    }
+
+    /**
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    int getSegmentCount() {
+        return slashCount + 1;
+    }
+
+    int getSegmentStart(final int segment) {
+        return segment == 0 ? 0 : slashes[segment - 1] + 1;
+    }
+
+    int getSegmentEnd(final int segment) {
+        return segment == slashCount ? path.length() : slashes[segment];
+    }
+
+    // the keyword, optionally followed by a version range like [1.0,2.0) or (,2.0]
+    private boolean isKeywordSegment(final int segment, final String keyword) {
+        final int start = getSegmentStart(segment);
+        if (!path.startsWith(keyword, start)) {
+            return false;
+        }
+        final int rangeStart = start + keyword.length();
+        final int end = getSegmentEnd(segment);
+        if (rangeStart == end) {
+            return true;
+        }
+        final char rangeOpening = path.charAt(rangeStart);
+        return rangeOpening == '[' || rangeOpening == '(';
+    }
+
+    /**
+     * @return whether the path points to a zip file or into a zip file, i.e. whether one of its
+     *         segments ends with <code>-unzip</code>
+     */
+    public boolean isZipContent() {
+        return unzipSegment >= 0;
+    }
+
+    /**
+     * Returns the path of the zip file the path points into, i.e. the path up to the first segment
+     * ending with <code>-unzip</code> without this extension. Empty segments are omitted and the
+     * returned path always starts with a slash.
+     *
+     * @return the path of the zip file, or <code>null</code> if the path does not point into a zip
+     *         file
+     */
+    public String getZipItemPath() {
+        if (unzipSegment < 0) {
+            return null;
+        }
+        final int end = getSegmentEnd(unzipSegment) - Util.UNZIP_TYPE_EXTENSION.length();
+        if (isNormalized(unzipSegment)) {
+            return path.substring(0, end);
+        }
+        final StringBuilder zipItemPath = new StringBuilder(end + 1);
+        for (int segment = 0; segment <= unzipSegment; segment++) {
+            final int start = getSegmentStart(segment);
+            final int segmentEnd = segment == unzipSegment ? end : getSegmentEnd(segment);
+            if (segmentEnd > start || segment == unzipSegment) {
+                zipItemPath.append('/').append(path, start, segmentEnd);
+            }
+        }
+        return zipItemPath.toString();
+    }
+
+    // whether the path starts with a slash and has no empty segments up to the given segment
+    private boolean isNormalized(final int lastSegment) {
+        if (slashCount == 0 || slashes[0] != 0) {
+            return false;
+        }
+        for (int segment = 1; segment < lastSegment; segment++) {
+            if (getSegmentEnd(segment) == getSegmentStart(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the path within the zip file the path points into, i.e. the rest of the path after
+     * the first segment ending with <code>-unzip</code> without leading and trailing slashes.
+     *
+     * @return the path within the zip file, which is empty if the path points to the zip file
+     *         itself, or <code>null</code> if the path does not point into a zip file
+     */
+    public String getPathInZip() {
+        if (unzipSegment < 0) {
+            return null;
+        }
+        int start = getSegmentEnd(unzipSegment);
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    /**
+     * Finds the last segment which is a snapshot version folder, like <code>1.0.0-SNAPSHOT</code>,
+     * and which is followed by an artifact name containing <code>-SNAPSHOT</code>.
+     *
+     * @return the index of the version folder segment, or -1
+     */
+    int findSnapshotVersionFolder() {
+        for (int segment = getSegmentCount() - 2; segment >= 1; segment--) {
+            if (isSnapshotVersionFolder(segment) && findKeywordInName(segment + 1, SNAPSHOT) >= 0) {
+                return segment;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first segment which consists of the given keyword, e.g. <code>SNAPSHOT</code> or
+     * <code>RELEASE</code>, optionally followed by a version range, e.g.
+     * <code>RELEASE[1.0,2.0)</code>, and which is followed by an artifact name containing the
+     * keyword.
+     *
+     * @return the index of the keyword segment, or -1
+     */
+    int findKeywordFolder(final String keyword) {
+        for (int segment = 1; segment < getSegmentCount() - 1; segment++) {
+            if (isKeywordSegment(segment, keyword) && findKeywordInName(segment + 1, keyword) >= 0) {
+                return segment;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the version range following the keyword in the given segment found by
+     *         {@link #findKeywordFolder(String)}, or <code>null</code> if the segment only consists
+     *         of the keyword
+     */
+    String getVersionRangeSpec(final int segment, final String keyword) {
+        final int rangeStart = getSegmentStart(segment) + keyword.length();
+        final int end = getSegmentEnd(segment);
+        return rangeStart == end ? null : path.substring(rangeStart, end);
+    }
+
+    /**
+     * Returns the offset of the dash in front of the last occurrence of the given keyword in the
+     * given segment which is followed by at least one other character, e.g. of
+     * <code>-SNAPSHOT</code> in <code>archive-SNAPSHOT.zip</code>.
+     *
+     * @return the offset in the path, or -1 if the keyword does not occur
+     */
+    int findKeywordInName(final int segment, final String keyword) {
+        final int start = getSegmentStart(segment);
+        int dash = getSegmentEnd(segment) - keyword.length() - 2;
+        while (dash >= start) {
+            dash = path.lastIndexOf('-', dash);
+            if (dash < start) {
+                break;
+            }
+            if (path.startsWith(keyword, dash + 1)) {
+                return dash;
+            }
+            dash--;
+        }
+        return -1;
+    }
+
+    // version folders consist of digits and dots, followed by qualifiers, like 1.0.0-rc-1-SNAPSHOT
+    private boolean isSnapshotVersionFolder(final int segment) {
+        final int start = getSegmentStart(segment);
+        final int versionEnd = getSegmentEnd(segment) - SNAPSHOT.length() - 1;
+        if (versionEnd < start || path.charAt(versionEnd) != '-' || !path.startsWith(SNAPSHOT, versionEnd + 1)) {
+            return false;
+        }
+        int i = start;
+        while (i < versionEnd && (isDigit(path.charAt(i)) || path.charAt(i) == '.')) {
+            i++;
+        }
+        while (i < versionEnd) {
+            if (path.charAt(i) != '-' || i + 1 == versionEnd || !isWordCharacter(path.charAt(i + 1))) {
+                return false;
+            }
+            i += 2;
+            while (i < versionEnd && isWordCharacter(path.charAt(i))) {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordCharacter(final char c) {
+        return isDigit(c) || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+}
@@ -21,7 +21,8 @@ public class UnchangedRequest extends ParsedRequest {
     }
 
     @Override
-    ConversionResult resolve(final Repository repository) throws LocalStorageException {
+    ConversionResult resolve(final Repository repository, final VersioningCache versioningCache)
+            throws LocalStorageException {
         return new ConversionResult(requestPath);
     }
 }
@@ -11,18 +11,55 @@
 package org.eclipse.tycho.nexus.internal.plugin.cache;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
 import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.PathLockMonitor;
+import org.eclipse.tycho.nexus.internal.plugin.storage.InflatedEntrySpool;
+import org.eclipse.tycho.nexus.internal.plugin.storage.SidecarListener;
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipArchiveIndex;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipArchiveIndexCache;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipFileHandlePool;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipFileHandlePool.ZipFileHandle;
 import org.slf4j.Logger;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.FileContentLocator;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.HostedRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.repository.RepositoryKind;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.LocalRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
@@ -30,23 +67,101 @@ import org.sonatype.nexus.util.ItemPathUtils;
 
 public class UnzipCache {
 
+    private static final int MAX_CLEANED_UP_ARTIFACTS = 10000;
+
+    /**
+     * An archive published in the local storage or read in place from the storage of the master
+     * repository, with the size and modification time it had when it was published or resolved.
+     */
+    static class ArchiveFile {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+
+        ArchiveFile(final File file) {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean isUnchanged() {
+            return file.length() == length && file.lastModified() == lastModified && file.isFile();
+        }
+    }
+
     private final DefaultUnzipRepository repository;
     private final LocalRepositoryStorage localStorage;
     private final Logger logger;
+    private final ZipArchiveIndexCache indexCache = new ZipArchiveIndexCache();
+    private final ZipFileHandlePool zipFilePool;
+    private final CachedArchiveTracker tracker = new CachedArchiveTracker();
+    // scan of the archives cached before, started in the background by the first access with a size limit
+    private final AtomicReference<Future<?>> trackerInitialization = new AtomicReference<Future<?>>();
+    private final ScheduledThreadPoolExecutor maintenanceExecutor;
+    private final ConcurrentMap<String, FutureTask<ArchiveFile>> downloads =
+            new ConcurrentHashMap<String, FutureTask<ArchiveFile>>();
+    // archives in the local storage, so that lookups do not need to access the file system
+    private final ConcurrentMap<String, ArchiveFile> publishedArchives = new ConcurrentHashMap<String, ArchiveFile>();
+    private final ConcurrentMap<String, ArchiveFile> masterArchives = new ConcurrentHashMap<String, ArchiveFile>();
+    // paths of deleted archives which are still read and only shredded after their last reader;
+    // the file at such a path must neither be served to new readers nor cached again in place
+    private final Set<String> retiredArchives = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // master repository which turned out not to store its items as files
+    private volatile Repository masterNotReadableInPlace;
+    private final MissingArchiveCache missingArchives;
+    // latest version for which a clean up was scheduled, by path up to version, in access order;
+    // forgetting an artifact only causes one more clean up for it
+    private final Map<String, String> cleanedUpVersions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > MAX_CLEANED_UP_ARTIFACTS;
+        }
+    };
 
     public UnzipCache(final DefaultUnzipRepository repository, final Logger logger) {
         this.logger = logger;
+        this.zipFilePool = new ZipFileHandlePool(logger);
         this.repository = repository;
+        this.missingArchives = new MissingArchiveCache(repository);
         localStorage = this.repository.getLocalStorage();
+        // for snapshot clean ups and the scan of the cache size; one thread at most, which terminates when idle
+        maintenanceExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "Unzip cache maintenance " + repository.getId());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        maintenanceExecutor.setKeepAliveTime(60, TimeUnit.SECONDS);
+        maintenanceExecutor.allowCoreThreadTimeOut(true);
+        // tasks submitted after the repository was removed are dropped
+        maintenanceExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Stops the background thread of this cache, e.g. because the repository is removed.
+     */
+    public void shutdown() {
+        maintenanceExecutor.shutdownNow();
+    }
+
+    boolean isShutdown() {
+        return maintenanceExecutor.isShutdown();
     }
 
     /**
      * Returns the requested artifact from the local storage if the artifact was already cached. If
      * not it retrieves it from the corresponding repository and stores it in the local storage.
+     * Concurrent requests for the same artifact share one retrieval, while requests for other
+     * artifacts are not blocked by it. If the repository reads archives of a hosted master
+     * repository in place, the file in the storage of the master repository is returned instead.
      * 
      * @param zipItemPath
      *            the path to the zip file
-     * @return the file in the local storage
+     * @return the file in the local storage, or in the storage of the master repository
      * 
      * @throws ItemNotFoundException
      *             thrown if the artifact cannot be found in the repository
@@ -55,29 +170,696 @@ public class UnzipCache {
      * 
      */
     public File getArchive(final String zipItemPath) throws ItemNotFoundException, LocalStorageException {
+        return resolveArchive(zipItemPath).file;
+    }
+
+    /**
+     * Returns the modification time of the requested archive, which is cached like in
+     * {@link #getArchive(String)}. The modification time of an archive in the local storage is
+     * remembered when it is cached, so that it is not read from the file system again.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @return the modification time of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     */
+    public long getLastModified(final String zipItemPath) throws ItemNotFoundException, LocalStorageException {
+        return getLastModified(zipItemPath, null);
+    }
+
+    /**
+     * Returns the modification time of the requested archive like {@link #getLastModified(String)}
+     * , but resolves the archive only once per request.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @param context
+     *            the resolution context of the request, or <code>null</code>
+     * @return the modification time of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     */
+    public long getLastModified(final String zipItemPath, final ResolutionContext context)
+            throws ItemNotFoundException, LocalStorageException {
+        return resolveArchive(zipItemPath, context).lastModified;
+    }
+
+    private ArchiveFile resolveArchive(final String zipItemPath, final ResolutionContext context)
+            throws ItemNotFoundException, LocalStorageException {
+        if (context == null) {
+            return resolveArchive(zipItemPath);
+        }
+        ArchiveFile archive = context.getArchive(zipItemPath);
+        if (archive == null) {
+            archive = resolveArchive(zipItemPath);
+            context.putArchive(zipItemPath, archive);
+        }
+        return archive;
+    }
+
+    /**
+     * Resolves the requested archive. Archives which were not found in the master repository are
+     * remembered for the time to live of the not found cache of the repository, so that requests
+     * for their content fail without asking the master repository again.
+     */
+    private ArchiveFile resolveArchive(final String zipItemPath) throws ItemNotFoundException,
+            LocalStorageException {
+        if (missingArchives.isMissing(zipItemPath)) {
+            throw new ItemNotFoundException(ItemNotFoundException.reasonFor(new ResourceStoreRequest(zipItemPath),
+                    repository, "Zip file %s was not found in the master repository recently", zipItemPath));
+        }
+        final long readToken = missingArchives.startLookup(zipItemPath);
+        try {
+            return resolveExistingArchive(zipItemPath);
+        } catch (final ItemNotFoundException e) {
+            missingArchives.add(zipItemPath, readToken);
+            throw e;
+        } finally {
+            missingArchives.endLookup(zipItemPath);
+        }
+    }
+
+    private ArchiveFile resolveExistingArchive(final String zipItemPath) throws ItemNotFoundException,
+            LocalStorageException {
+        if (repository.isReadHostedArchivesInPlace()) {
+            final ArchiveFile masterArchive = getMasterArchive(zipItemPath);
+            if (masterArchive != null) {
+                logger.debug("Accessed zip file in master repository: " + zipItemPath);
+                return masterArchive;
+            }
+        }
+        final boolean limitedSize = repository.getMaxCacheSize() > 0;
+        if (limitedSize) {
+            initializeTracker();
+        }
+        ArchiveFile archive = getCachedArchive(zipItemPath, limitedSize);
+        if (archive == null) {
+            archive = cacheArchive(zipItemPath, limitedSize);
+        }
+        logger.debug("Accessed cached zip file: " + zipItemPath);
+        return archive;
+    }
+
+    /**
+     * Returns the file of the requested archive in the storage of the master repository, if the
+     * master repository is a hosted repository and stores the archive as a file. The file is
+     * remembered as long as its size and modification time do not change. A master repository
+     * which does not store its items as files is remembered as well, so that its archives are not
+     * retrieved once for the lookup and once more for caching them on every request.
+     */
+    private ArchiveFile getMasterArchive(final String zipItemPath) throws ItemNotFoundException,
+            LocalStorageException {
+        final ArchiveFile masterArchive = masterArchives.get(zipItemPath);
+        if (masterArchive != null) {
+            if (masterArchive.isUnchanged()) {
+                return masterArchive;
+            }
+            masterArchives.remove(zipItemPath, masterArchive);
+        }
+        final Repository masterRepository = repository.getMasterRepository();
+        if (masterRepository == masterNotReadableInPlace) {
+            return null;
+        }
+        final RepositoryKind masterKind = masterRepository.getRepositoryKind();
+        if (masterKind == null || !masterKind.isFacetAvailable(HostedRepository.class)) {
+            // items of proxies may be refreshed from remote and items of groups may be shadowed
+            return null;
+        }
+        final StorageItem storageItem;
+        try {
+            storageItem = retrieveItemFromMaster(new ResourceStoreRequest(zipItemPath));
+        } catch (final ItemNotFoundException e) {
+            deleteStaleSidecars(zipItemPath, null);
+            throw e;
+        }
+        if (storageItem instanceof StorageFileItem
+                && !(((StorageFileItem) storageItem).getContentLocator() instanceof FileContentLocator)) {
+            logger.debug("Master repository does not store zip files as files: " + masterRepository.getId());
+            masterNotReadableInPlace = masterRepository;
+        }
+        final File file = getFile(storageItem);
+        if (file == null) {
+            return null;
+        }
+        final ArchiveFile resolvedArchive = new ArchiveFile(file);
+        // resolved for the first time or after a change, so files derived before may be outdated
+        deleteStaleSidecars(zipItemPath, file);
+        masterArchives.put(zipItemPath, resolvedArchive);
+        return resolvedArchive;
+    }
+
+    /**
+     * Returns the file the content of the given item is stored in, or <code>null</code> if the item
+     * is not stored as a file.
+     */
+    private static File getFile(final StorageItem storageItem) {
+        if (!(storageItem instanceof StorageFileItem)) {
+            return null;
+        }
+        final StorageFileItem fileItem = (StorageFileItem) storageItem;
+        if (!(fileItem.getContentLocator() instanceof FileContentLocator)) {
+            return null;
+        }
+        final File file = ((FileContentLocator) fileItem.getContentLocator()).getFile();
+        if (!file.isFile() || file.length() != fileItem.getLength()) {
+            // not the file the item describes, e.g. because it is being replaced
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Deletes the files derived from an archive read in place, which are kept at the location of
+     * the archive in the local storage, unless they describe the given current file of the archive.
+     * The persisted index records the size and modification time of the file it was read from, so
+     * the index and the spooled entries are deleted together once the archive is modified or
+     * deleted in the master repository.
+     */
+    private void deleteStaleSidecars(final String zipItemPath, final File masterFile) throws LocalStorageException {
+        final File location = getCacheLocation(zipItemPath);
+        if (location.isFile()) {
+            // derived from an archive cached before, and deleted together with it
+            return;
+        }
+        if (masterFile != null && indexCache.hasPersistedIndex(masterFile, location)) {
+            return;
+        }
+        deleteSidecars(masterFile != null ? masterFile : location, location);
+    }
+
+    /**
+     * Deletes the persisted index and the spooled entries kept at the given location in the local
+     * storage, but not the archive itself.
+     */
+    private void deleteSidecars(final File archive, final File location) {
+        indexCache.invalidate(archive, location);
+        InflatedEntrySpool.delete(location);
+    }
+
+    /**
+     * Makes the given file available at the given location without copying its content, by
+     * creating a hard link. The link is created under a temporary name and renamed afterwards, so
+     * that readers never see a partial file.
+     * 
+     * @param source
+     *            the file to be linked
+     * @param target
+     *            the location of the link, which is replaced if it exists
+     * @return <code>true</code> if the link was created, <code>false</code> if hard links are not
+     *         supported, e.g. because the files are located in different file systems
+     */
+    static boolean linkFile(final File source, final File target) {
+        final Path tempLink = getTempFile(target).toPath();
+        try {
+            Files.createLink(tempLink, source.toPath());
+            Files.move(tempLink, target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (final IOException e) {
+            return false;
+        } catch (final UnsupportedOperationException e) {
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(tempLink);
+            } catch (final IOException e) {
+                // left for the next clean up of the folder
+            }
+        }
+    }
+
+    /**
+     * Returns the location of the requested archive in the local storage, next to which files
+     * derived from the archive are kept. If the archive is read in place from the master
+     * repository, there is no file at this location.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @return the location of the archive in the local storage
+     * 
+     * @throws LocalStorageException
+     */
+    public File getCacheLocation(final String zipItemPath) throws LocalStorageException {
+        return getFileFromBase(new ResourceStoreRequest(zipItemPath));
+    }
+
+    /**
+     * Writes the content of the given item to a temporary file, which is renamed to the given
+     * location once it is complete, so that readers never see a partial file. The attributes of the
+     * published item are stored like {@link LocalRepositoryStorage#storeItem(Repository, StorageItem)}
+     * stores them for the items it writes.
+     */
+    private void publishFile(final StorageFileItem fileItem, final File target) throws IOException {
+        final File tempFile = getTempFile(target);
+        try {
+            final InputStream content = fileItem.getInputStream();
+            try {
+                Files.copy(content, tempFile.toPath());
+            } finally {
+                content.close();
+            }
+            if (fileItem.getModified() > 0) {
+                tempFile.setLastModified(fileItem.getModified());
+            }
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete();
+        }
+        // an item of this repository, so that the attributes of the master repository are not touched
+        final DefaultStorageFileItem publishedItem = new DefaultStorageFileItem(repository, new ResourceStoreRequest(
+                fileItem.getPath()), true, true, new FileContentLocator(target, fileItem.getMimeType()));
+        publishedItem.setModified(target.lastModified());
+        publishedItem.setStoredLocally(System.currentTimeMillis());
+        publishedItem.setRemoteChecked(publishedItem.getStoredLocally());
+        repository.getAttributesHandler().storeAttributes(publishedItem, publishedItem.getContentLocator());
+    }
+
+    // a hidden file in the folder of the target, so that it can be renamed atomically
+    private static File getTempFile(final File target) {
+        final File folder = target.getParentFile();
+        folder.mkdirs();
+        return new File(folder, "." + target.getName() + "." + UUID.randomUUID() + Util.TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Looks up an already cached archive without any lock. Archives are only published completely
+     * by an atomic rename, and archives still being read are not deleted before their last reader
+     * is done, see {@link #deleteCachedItem(String)}. An archive deleted between the lookup and
+     * opening it is cached again, see {@link #getOpenedArchive(String, ArchiveOpener)}.
+     * <p>
+     * Archives published by this cache are remembered, so that the file system is only accessed
+     * for archives cached before, e.g. before a restart.
+     */
+    private ArchiveFile getCachedArchive(final String zipItemPath, final boolean limitedSize)
+            throws LocalStorageException {
+        ArchiveFile archive = publishedArchives.get(zipItemPath);
+        if (archive == null) {
+            if (retiredArchives.contains(zipItemPath)) {
+                return null;
+            }
+            final File file = getFileFromBase(new ResourceStoreRequest(zipItemPath));
+            if (!file.isFile()) {
+                return null;
+            }
+            archive = new ArchiveFile(file);
+            publishedArchives.put(zipItemPath, archive);
+        }
+        if (limitedSize) {
+            tracker.accessed(zipItemPath, archive.length);
+        }
+        return archive;
+    }
+
+    private ArchiveFile cacheArchive(final String zipItemPath, final boolean limitedSize)
+            throws ItemNotFoundException, LocalStorageException {
+        final FutureTask<ArchiveFile> download = new FutureTask<ArchiveFile>(new Callable<ArchiveFile>() {
+            @Override
+            public ArchiveFile call() throws Exception {
+                return storeArchive(zipItemPath, limitedSize);
+            }
+        });
+        final FutureTask<ArchiveFile> runningDownload = downloads.putIfAbsent(zipItemPath, download);
+        try {
+            if (runningDownload == null) {
+                try {
+                    download.run();
+                } finally {
+                    downloads.remove(zipItemPath, download);
+                }
+                final ArchiveFile archive = download.get();
+                if (limitedSize) {
+                    // outside of any folder lock, as evicted archives may be located in other folders
+                    evictArchives(zipItemPath);
+                }
+                return archive;
+            }
+            logger.debug("Waiting for running download of zip file: " + zipItemPath);
+            final ArchiveFile archive = runningDownload.get();
+            if (limitedSize) {
+                tracker.accessed(zipItemPath, archive.length);
+            }
+            return archive;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ItemNotFoundException) {
+                throw (ItemNotFoundException) cause;
+            } else if (cause instanceof LocalStorageException) {
+                throw (LocalStorageException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new LocalStorageException(cause);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LocalStorageException(e);
+        }
+    }
+
+    private ArchiveFile storeArchive(final String zipItemPath, final boolean limitedSize)
+            throws ItemNotFoundException, LocalStorageException {
+        final ResourceStoreRequest request = new ResourceStoreRequest(zipItemPath);
         final PathLockMonitor folderLock = PathLock.getLock(getRequestPathParent(zipItemPath));
+        // shared, so that downloads and reads of other archives in the folder are not blocked, but
+        // a clean up cannot remove the archive before it is returned
+        folderLock.lockShared();
         try {
-            synchronized (folderLock) {
-                final ResourceStoreRequest request = new ResourceStoreRequest(zipItemPath);
-                if (!localStorage.containsItem(repository, request)) {
-                    logger.debug("Caching zip file from master repository: " + zipItemPath);
-                    final StorageItem storageItem = retrieveItemFromMaster(request);
-                    localStorage.storeItem(repository, storageItem);
+            // a retired archive is replaced, which does not affect its readers
+            final boolean retired = retiredArchives.contains(zipItemPath);
+            if (retired || !localStorage.containsItem(repository, request)) {
+                logger.debug("Caching zip file from master repository: " + zipItemPath);
+                if (retired) {
+                    // derived files of the retired archive must not be served for the new one
+                    deleteSidecars(getFileFromBase(request), getFileFromBase(request));
+                }
+                final StorageItem storageItem = retrieveItemFromMaster(request);
+                final File masterFile = getFile(storageItem);
+                if (masterFile == null || !linkFile(masterFile, getFileFromBase(request))) {
+                    if (storageItem instanceof StorageFileItem) {
+                        publishFile((StorageFileItem) storageItem, getFileFromBase(request));
+                    } else {
+                        localStorage.storeItem(repository, storageItem);
+                    }
                 }
-                final File file = ((DefaultFSLocalRepositoryStorage) localStorage).getFileFromBase(repository, request);
-                logger.debug("Accessed cached zip file: " + zipItemPath);
-                return file;
             }
+            final ArchiveFile archive = new ArchiveFile(getFileFromBase(request));
+            publishedArchives.put(zipItemPath, archive);
+            // the deferred deletion of the retired archive must not delete its replacement
+            retiredArchives.remove(zipItemPath);
+            missingArchives.invalidate(zipItemPath, false);
+            if (limitedSize) {
+                // a linked archive occupies no space of its own
+                tracker.accessed(zipItemPath, Util.getCachedSize(archive.file));
+            }
+            return archive;
         } catch (final UnsupportedStorageOperationException e) {
             throw new LocalStorageException(e);
+        } catch (final IOException e) {
+            throw new LocalStorageException(e);
         } finally {
+            folderLock.unlockShared();
             PathLock.releaseLock(folderLock);
         }
     }
 
+    /**
+     * Registers the archives already present in the local storage with the tracker of the cache
+     * size. The storage is scanned in the background, so that the request which sets it off is not
+     * delayed by a large storage. No archives are evicted before the scan is done.
+     * 
+     * @return the scan, which is only started on the first call
+     */
+    Future<?> initializeTracker() throws LocalStorageException {
+        final Future<?> initialization = trackerInitialization.get();
+        if (initialization != null) {
+            return initialization;
+        }
+        final File baseDirectory = getFileFromBase(new ResourceStoreRequest("/"));
+        final FutureTask<Void> scan = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                tracker.initialize(baseDirectory);
+            }
+        }, null);
+        if (!trackerInitialization.compareAndSet(null, scan)) {
+            return trackerInitialization.get();
+        }
+        maintenanceExecutor.execute(scan);
+        return scan;
+    }
+
+    /**
+     * Returns a listener which counts the files derived from the requested archive, i.e. its
+     * persisted index and spooled entries, in the size of the cache when they are written.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @return the listener
+     */
+    public SidecarListener getSidecarListener(final String zipItemPath) {
+        return new SidecarListener() {
+            @Override
+            public void written(final long size) {
+                if (repository.getMaxCacheSize() > 0) {
+                    tracker.grown(zipItemPath, size);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the entries of the requested archive. The archive is cached like in
+     * {@link #getArchive(String)} and its central directory is read only once as long as the cached
+     * file is not modified.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @return the index of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     *             thrown if the archive cannot be read
+     */
+    public ZipArchiveIndex getArchiveIndex(final String zipItemPath) throws ItemNotFoundException,
+            LocalStorageException {
+        return getArchiveIndex(zipItemPath, null);
+    }
+
+    /**
+     * Returns the index of the entries of the requested archive like
+     * {@link #getArchiveIndex(String)}, but resolves the archive and its index only once per
+     * request.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @param context
+     *            the resolution context of the request, or <code>null</code>
+     * @return the index of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     *             thrown if the archive cannot be read
+     */
+    public ZipArchiveIndex getArchiveIndex(final String zipItemPath, final ResolutionContext context)
+            throws ItemNotFoundException, LocalStorageException {
+        if (context != null) {
+            final ZipArchiveIndex index = context.getIndex(zipItemPath);
+            if (index != null) {
+                return index;
+            }
+        }
+        final ZipArchiveIndex index = getOpenedArchive(zipItemPath, context,
+                new ArchiveOpener<ZipArchiveIndex>() {
+                    @Override
+                    public ZipArchiveIndex open(final ArchiveFile archive) throws IOException,
+                            LocalStorageException {
+                        return indexCache.getIndex(archive.file, getCacheLocation(zipItemPath), archive.length,
+                                archive.lastModified, getSidecarListener(zipItemPath));
+                    }
+                });
+        if (context != null) {
+            context.putIndex(zipItemPath, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns a shared open handle of the requested archive. The archive is cached like in
+     * {@link #getArchive(String)}. The handle must be released after use, e.g. when the stream of
+     * an entry read from it is closed.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @return the handle of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     *             thrown if the archive cannot be opened
+     */
+    public ZipFileHandle borrowZipFile(final String zipItemPath) throws ItemNotFoundException, LocalStorageException {
+        return borrowZipFile(zipItemPath, null);
+    }
+
+    /**
+     * Returns a shared open handle of the requested archive like {@link #borrowZipFile(String)},
+     * but resolves the archive only once per request.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @param context
+     *            the resolution context of the request, or <code>null</code>
+     * @return the handle of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     *             thrown if the archive cannot be opened
+     */
+    public ZipFileHandle borrowZipFile(final String zipItemPath, final ResolutionContext context)
+            throws ItemNotFoundException, LocalStorageException {
+        return getOpenedArchive(zipItemPath, context, new ArchiveOpener<ZipFileHandle>() {
+            @Override
+            public ZipFileHandle open(final ArchiveFile archive) throws IOException {
+                return zipFilePool.borrow(archive.file, archive.length, archive.lastModified);
+            }
+        });
+    }
+
+    private interface ArchiveOpener<T> {
+        T open(ArchiveFile archive) throws IOException, LocalStorageException;
+    }
+
+    /**
+     * Opens the requested archive with the given opener. As cached archives are looked up without
+     * a lock, an archive may be deleted by a concurrent clean up before it is opened; it is cached
+     * again in this case.
+     */
+    private <T> T getOpenedArchive(final String zipItemPath, final ResolutionContext context,
+            final ArchiveOpener<T> opener) throws ItemNotFoundException, LocalStorageException {
+        ArchiveFile archive = resolveArchive(zipItemPath, context);
+        try {
+            return opener.open(archive);
+        } catch (final IOException e) {
+            if (archive.file.exists()) {
+                throw new LocalStorageException(e);
+            }
+        }
+        logger.debug("Zip file deleted before it could be opened: " + zipItemPath);
+        publishedArchives.remove(zipItemPath, archive);
+        if (context != null) {
+            context.removeArchive(zipItemPath);
+        }
+        archive = resolveArchive(zipItemPath, context);
+        try {
+            return opener.open(archive);
+        } catch (final IOException e) {
+            throw new LocalStorageException(e);
+        }
+    }
+
+    /**
+     * Opens a private channel of the requested archive, e.g. for reading the raw data of an
+     * uncompressed entry without the overhead of a {@link java.util.zip.ZipFile}. The archive is
+     * resolved like in {@link #borrowZipFile(String, ResolutionContext)}. The channel must be
+     * closed by the caller.
+     * 
+     * @param zipItemPath
+     *            the path to the zip file
+     * @param context
+     *            the resolution context of the request, or <code>null</code>
+     * @return the channel of the archive
+     * 
+     * @throws ItemNotFoundException
+     *             thrown if the artifact cannot be found in the repository
+     * 
+     * @throws LocalStorageException
+     *             thrown if the archive cannot be opened
+     */
+    public FileChannel openChannel(final String zipItemPath, final ResolutionContext context)
+            throws ItemNotFoundException, LocalStorageException {
+        return getOpenedArchive(zipItemPath, context, new ArchiveOpener<FileChannel>() {
+            @Override
+            public FileChannel open(final ArchiveFile archive) throws IOException {
+                final FileChannel channel = new RandomAccessFile(archive.file, "r").getChannel();
+                if (channel.size() != archive.length) {
+                    channel.close();
+                    throw new IOException("Zip file changed since it was resolved: " + archive.file);
+                }
+                return channel;
+            }
+        });
+    }
+
+    /**
+     * Forgets that archives affected by a change of the given item were not found, so that they are
+     * looked up in the master repository again on the next request.
+     *
+     * @param itemPath
+     *            the path of the created, changed or deleted item
+     * @param collection
+     *            whether the item is a folder, in which case all archives below are affected
+     */
+    public void invalidateMissingArchives(final String itemPath, final boolean collection) {
+        missingArchives.invalidate(itemPath, collection);
+    }
+
+    /**
+     * Schedules the removal of out-dated snapshots like {@link #cleanSnapshots(ConversionResult)}
+     * in the background. A clean up is only scheduled if the conversion result reports another
+     * latest version than the previous one of the same artifact, so that the storage is not
+     * listed again on every request. If a new snapshot is available, the clean up is delayed by the
+     * snapshot retention period of the repository; it is skipped if an even newer snapshot is
+     * reported in the meantime.
+     * 
+     * @param conversionResult
+     *            the result of the conversion of the request path
+     * @return the scheduled clean up, or <code>null</code> if no clean up is needed
+     */
+    public Future<?> scheduleSnapshotCleanUp(final ConversionResult conversionResult) {
+        if (!conversionResult.isPathConverted() && conversionResult.isASnapshotAvailable()) {
+            return null;
+        }
+        final String pathUpToVersion = conversionResult.getPathUpToVersion();
+        // an empty version stands for no snapshot being available
+        final String latestVersion = conversionResult.isASnapshotAvailable() ? conversionResult.getLatestVersion()
+                : "";
+        final String previousVersion;
+        synchronized (cleanedUpVersions) {
+            previousVersion = cleanedUpVersions.put(pathUpToVersion, latestVersion);
+        }
+        if (latestVersion.equals(previousVersion)) {
+            return null;
+        }
+        final long delay = conversionResult.isASnapshotAvailable() ? Math.max(0,
+                repository.getSnapshotRetentionPeriod()) : 0;
+        return maintenanceExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!isLatestCleanUp(pathUpToVersion, latestVersion)) {
+                    // superseded by the clean up for a newer version
+                    return;
+                }
+                try {
+                    cleanSnapshots(conversionResult);
+                } catch (final Exception e) {
+                    logger.warn("Unable to clean up outdated cached snapshots of " + pathUpToVersion, e);
+                    // retry on the next request
+                    synchronized (cleanedUpVersions) {
+                        if (isLatestCleanUp(pathUpToVersion, latestVersion)) {
+                            cleanedUpVersions.remove(pathUpToVersion);
+                        }
+                    }
+                }
+            }
+        }, delay, TimeUnit.SECONDS);
+    }
+
+    private boolean isLatestCleanUp(final String pathUpToVersion, final String latestVersion) {
+        synchronized (cleanedUpVersions) {
+            return latestVersion.equals(cleanedUpVersions.get(pathUpToVersion));
+        }
+    }
+
     /**
      * Depending on the conversion result out-dated snapshots are removed from the storage, if
-     * possible.
+     * possible. The artifacts of as many previous builds as configured by the snapshot retention
+     * count of the repository are kept.
      * 
      * 
      * @param conversionResult
@@ -96,27 +878,41 @@ public class UnzipCache {
             final String requestPathParent = getRequestPathParent(conversionResult.getPathUpToVersion());
             final ResourceStoreRequest parentPathRequest = new ResourceStoreRequest(requestPathParent);
             final PathLockMonitor folderLock = PathLock.getLock(requestPathParent);
+            folderLock.lockExclusive();
             try {
-                synchronized (folderLock) {
-                    final List<String> toBeDeleted = new LinkedList<String>();
-                    for (final StorageItem item : localStorage.listItems(repository, parentPathRequest)) {
-                        final String itemPath = item.getPath();
-                        if (!conversionResult.isASnapshotAvailable()) {
-                            toBeDeleted.add(itemPath);
-                        } else if (itemPath.startsWith(conversionResult.getPathUpToVersion())
-                                && !itemPath.contains(conversionResult.getLatestVersion())) {
-                            toBeDeleted.add(itemPath);
-                        }
+                final Set<String> itemPaths = new LinkedHashSet<String>();
+                for (final StorageItem item : localStorage.listItems(repository, parentPathRequest)) {
+                    if (!Util.isArchiveSidecar(item.getPath())) {
+                        itemPaths.add(item.getPath());
+                        continue;
                     }
-                    //use list of Strings instead of items, cause file handles will prevent deletion in many cases
-                    for (final String itemPath : toBeDeleted) {
-                        localStorage.shredItem(repository, new ResourceStoreRequest(itemPath));
-                        logger.debug("Deleted outdated cached snapshot artifact: " + itemPath);
+                    // deleted together with its archive, or on their own if the archive is read in place
+                    final String archivePath = Util.getArchivePathOfSidecar(item.getPath());
+                    if (archivePath != null) {
+                        itemPaths.add(archivePath);
                     }
-                    if (toBeDeleted.size() == 0) {
-                        logger.debug("No outdated cached snapshots artifacts found");
+                }
+                final List<String> toBeDeleted = new LinkedList<String>();
+                for (final String itemPath : itemPaths) {
+                    if (!conversionResult.isASnapshotAvailable()) {
+                        toBeDeleted.add(itemPath);
+                    } else if (itemPath.startsWith(conversionResult.getPathUpToVersion())
+                            && !itemPath.contains(conversionResult.getLatestVersion())) {
+                        toBeDeleted.add(itemPath);
                     }
                 }
+                if (conversionResult.isASnapshotAvailable()) {
+                    SnapshotBuild.retainMostRecent(toBeDeleted, conversionResult.getPathUpToVersion(),
+                            repository.getSnapshotRetentionCount());
+                }
+                //use list of Strings instead of items, cause file handles will prevent deletion in many cases
+                for (final String itemPath : toBeDeleted) {
+                    deleteCachedItem(itemPath);
+                    logger.debug("Deleted outdated cached snapshot artifact: " + itemPath);
+                }
+                if (toBeDeleted.size() == 0) {
+                    logger.debug("No outdated cached snapshots artifacts found");
+                }
             } catch (final UnsupportedStorageOperationException e) {
                 logger.warn(this.getClass().getName() + ": Unable to delete cached item", e);
             } catch (@SuppressWarnings("deprecation") final org.sonatype.nexus.proxy.StorageException e) {
@@ -126,11 +922,120 @@ public class UnzipCache {
                 // e,g localStorage.listItems(repository, parentPathRequest) throws this exception in case 
                 // the parent folder was removed from the file system
             } finally {
+                folderLock.unlockExclusive();
+                PathLock.releaseLock(folderLock);
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used archives from the cache until the cache size limit is met
+     * again. Archives which are currently read are deleted once their readers are done. The
+     * storage is only measured again if the tracked size exceeds the limit.
+     */
+    private void evictArchives(final String storedPath) {
+        final Future<?> initialization = trackerInitialization.get();
+        if (initialization == null || !initialization.isDone()) {
+            // the least recently used archives are not known yet
+            return;
+        }
+        final long maxCacheSize = repository.getMaxCacheSize();
+        if (tracker.getTotalSize() <= maxCacheSize) {
+            return;
+        }
+        // e.g. files next to archives deleted or written outside of the cache
+        tracker.refreshSizes();
+        for (final CachedArchiveTracker.Candidate candidate : tracker.getEvictionCandidates(maxCacheSize, storedPath)) {
+            final String itemPath = candidate.getPath();
+            final PathLockMonitor folderLock = PathLock.getLock(getRequestPathParent(itemPath));
+            folderLock.lockExclusive();
+            try {
+                if (!tracker.isUnchanged(candidate)) {
+                    // accessed again in the meantime
+                    continue;
+                }
+                deleteCachedItem(itemPath);
+                logger.debug("Evicted cached zip file: " + itemPath);
+            } catch (final UnsupportedStorageOperationException e) {
+                logger.warn(this.getClass().getName() + ": Unable to delete cached item", e);
+            } catch (@SuppressWarnings("deprecation") final org.sonatype.nexus.proxy.StorageException e) {
+                // do nothing, as we accept if the file cannot be deleted
+            } catch (final ItemNotFoundException e) {
+                // already deleted on OS level
+                tracker.removed(itemPath);
+            } finally {
+                folderLock.unlockExclusive();
                 PathLock.releaseLock(folderLock);
             }
         }
     }
 
+    /**
+     * Deletes the given cached item. An archive which is still read is retired instead: it is
+     * deleted by its last reader when the handle of the archive is released, so that readers never
+     * lose an archive they already opened. Until then it is not looked up anymore, and it is not
+     * deleted at all if it is replaced by a new download in the meantime. Must be called with the
+     * exclusive folder lock held.
+     */
+    private void deleteCachedItem(final String itemPath) throws UnsupportedStorageOperationException,
+            ItemNotFoundException, LocalStorageException {
+        final File file = getFileFromBase(new ResourceStoreRequest(itemPath));
+        publishedArchives.remove(itemPath);
+        tracker.removed(itemPath);
+        if (!file.exists()) {
+            // only the files derived from an archive read in place are left
+            deleteSidecars(file, file);
+            return;
+        }
+        final boolean inUse = !zipFilePool.invalidate(file, new Runnable() {
+            @Override
+            public void run() {
+                deleteRetiredItem(itemPath, file);
+            }
+        });
+        if (inUse) {
+            logger.debug("Deferring deletion of cached zip file still being read: " + itemPath);
+            retiredArchives.add(itemPath);
+            return;
+        }
+        retiredArchives.remove(itemPath);
+        shredItem(itemPath, file);
+    }
+
+    private void deleteRetiredItem(final String itemPath, final File file) {
+        final PathLockMonitor folderLock = PathLock.getLock(getRequestPathParent(itemPath));
+        folderLock.lockExclusive();
+        try {
+            if (!retiredArchives.remove(itemPath)) {
+                // replaced by a new download, or already deleted
+                return;
+            }
+            shredItem(itemPath, file);
+            logger.debug("Deleted retired cached zip file: " + itemPath);
+        } catch (final UnsupportedStorageOperationException e) {
+            logger.warn(this.getClass().getName() + ": Unable to delete cached item", e);
+        } catch (@SuppressWarnings("deprecation") final org.sonatype.nexus.proxy.StorageException e) {
+            // do nothing, as we accept if the file cannot be deleted
+        } catch (final ItemNotFoundException e) {
+            // already deleted on OS level
+        } finally {
+            folderLock.unlockExclusive();
+            PathLock.releaseLock(folderLock);
+        }
+    }
+
+    private void shredItem(final String itemPath, final File file) throws UnsupportedStorageOperationException,
+            ItemNotFoundException, LocalStorageException {
+        // also forgets the archive if it was looked up again since it was retired
+        publishedArchives.remove(itemPath);
+        deleteSidecars(file, file);
+        localStorage.shredItem(repository, new ResourceStoreRequest(itemPath));
+    }
+
+    private File getFileFromBase(final ResourceStoreRequest request) throws LocalStorageException {
+        return ((DefaultFSLocalRepositoryStorage) localStorage).getFileFromBase(repository, request);
+    }
+
     private static String getRequestPathParent(final String path) {
         return ItemPathUtils.getParentPath(path) + ItemPathUtils.PATH_SEPARATOR;
     }
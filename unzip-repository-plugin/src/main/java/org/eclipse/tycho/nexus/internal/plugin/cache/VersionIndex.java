@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.Restriction;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * The versioning information of a maven-metadata.xml together with its versions, which are parsed
+ * once and kept sorted, separately for all versions and for releases only. The latest version,
+ * also within a version range, is thereby found by binary search. The index is built on first use,
+ * as the versioning information of snapshot versions does not need it.
+ * <p>
+ * Of several versions which are equal according to the Maven version ordering, e.g.
+ * <code>1.0</code> and <code>1.0.0</code>, the one listed first in the metadata is selected.
+ */
+final class VersionIndex {
+
+    private static final String SNAPSHOT_SUFFIX = "-SNAPSHOT";
+
+    // explicit, as older versions of maven-artifact only implement the raw Comparable type
+    private static final Comparator<DefaultArtifactVersion> VERSION_ORDER = new Comparator<DefaultArtifactVersion>() {
+        @Override
+        public int compare(final DefaultArtifactVersion version1, final DefaultArtifactVersion version2) {
+            return version1.compareTo(version2);
+        }
+    };
+
+    private static final class SortedVersions {
+        private final DefaultArtifactVersion[] allVersions;
+        private final DefaultArtifactVersion[] releaseVersions;
+
+        SortedVersions(final List<String> versions) {
+            final List<DefaultArtifactVersion> all = new ArrayList<DefaultArtifactVersion>(versions.size());
+            final List<DefaultArtifactVersion> releases = new ArrayList<DefaultArtifactVersion>(versions.size());
+            for (final String version : versions) {
+                final DefaultArtifactVersion artifactVersion = new DefaultArtifactVersion(version);
+                all.add(artifactVersion);
+                if (!version.trim().endsWith(SNAPSHOT_SUFFIX)) {
+                    releases.add(artifactVersion);
+                }
+            }
+            // stable, so that equal versions keep the order of the metadata
+            Collections.sort(all, VERSION_ORDER);
+            Collections.sort(releases, VERSION_ORDER);
+            allVersions = all.toArray(new DefaultArtifactVersion[all.size()]);
+            releaseVersions = releases.toArray(new DefaultArtifactVersion[releases.size()]);
+        }
+    }
+
+    private final Versioning versioning;
+    private volatile SortedVersions sortedVersions;
+
+    VersionIndex(final Versioning versioning) {
+        this.versioning = versioning;
+    }
+
+    Versioning getVersioning() {
+        return versioning;
+    }
+
+    private DefaultArtifactVersion[] getSortedVersions(final boolean includeSnapshots) {
+        SortedVersions sorted = sortedVersions;
+        if (sorted == null) {
+            // building the index twice in concurrent calls does no harm
+            sorted = new SortedVersions(versioning.getVersions());
+            sortedVersions = sorted;
+        }
+        return includeSnapshots ? sorted.allVersions : sorted.releaseVersions;
+    }
+
+    /**
+     * @return whether the metadata lists any version of the requested kind
+     */
+    boolean hasVersions(final boolean includeSnapshots) {
+        return getSortedVersions(includeSnapshots).length > 0;
+    }
+
+    /**
+     * Returns the highest version, or the highest version within the given range.
+     *
+     * @param versionRange
+     *            the range the version must be contained in, or <code>null</code>
+     * @param includeSnapshots
+     *            whether snapshot versions are considered
+     * @return the version as listed in the metadata, or <code>null</code> if there is no such
+     *         version
+     */
+    String getLatestVersion(final VersionRange versionRange, final boolean includeSnapshots) {
+        final DefaultArtifactVersion[] versions = getSortedVersions(includeSnapshots);
+        if (versions.length == 0) {
+            return null;
+        }
+        if (versionRange == null) {
+            return versions[firstEqual(versions, versions.length - 1)].toString();
+        }
+        int latest = -1;
+        for (final Restriction restriction : versionRange.getRestrictions()) {
+            final int candidate = findHighest(versions, restriction.getUpperBound(),
+                    restriction.isUpperBoundInclusive());
+            if (candidate > latest && restriction.containsVersion(versions[candidate])) {
+                latest = candidate;
+            }
+        }
+        return latest < 0 ? null : versions[firstEqual(versions, latest)].toString();
+    }
+
+    /**
+     * Returns the index of the highest version which is below the given bound, or equal to it if
+     * the bound is inclusive. A version which is too low for the restriction does not matter, as
+     * all lower versions are too low as well.
+     */
+    private static int findHighest(final DefaultArtifactVersion[] versions, final ArtifactVersion upperBound,
+            final boolean inclusive) {
+        if (upperBound == null) {
+            return versions.length - 1;
+        }
+        // the first index above the bound
+        int low = 0;
+        int high = versions.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = versions[middle].compareTo(upperBound);
+            if (comparison < 0 || comparison == 0 && inclusive) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // if all versions are above the bound, the lowest one is returned, which the restriction does not contain
+        return low == 0 ? 0 : low - 1;
+    }
+
+    // the first of the versions which are equal to the one at the given index
+    private static int firstEqual(final DefaultArtifactVersion[] versions, final int index) {
+        int first = index;
+        while (first > 0 && versions[first - 1].compareTo(versions[index]) == 0) {
+            first--;
+        }
+        return first;
+    }
+}
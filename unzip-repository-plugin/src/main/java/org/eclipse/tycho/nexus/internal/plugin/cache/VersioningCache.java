@@ -0,0 +1,459 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.eclipse.tycho.nexus.internal.plugin.UnzipRepository;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Caches the versioning information parsed from the maven-metadata.xml files of the master
+ * repository of an unzip repository, so that resolving virtual versions does not need to read and
+ * parse the metadata on every request.
+ * <p>
+ * Cached information is invalidated by the repository when it is notified about a change of the
+ * metadata file, see {@link #invalidate(String, boolean)}. Optionally it also expires after the
+ * maximal age configured for the unzip repository.
+ * <p>
+ * Concurrent reads of the same metadata file are combined into a single read, see
+ * {@link #read(Repository, String)}. Expired information is kept as the last known state of the
+ * metadata file, which is used if a read takes longer than the configured timeout.
+ * <p>
+ * If configured for the unzip repository, the virtual versions resolved with the versioning
+ * information are cached as well, see {@link #resolve(Repository, ParsedRequest, String)}.
+ */
+public class VersioningCache {
+
+    private static final int REFRESH_THREADS = 2;
+    private static final int READ_THREADS = 4;
+    private static final int MAX_METADATA_FILES = 10000;
+    private static final int MAX_CONVERSIONS = 10000;
+
+    private static class CachedVersioning {
+        private final String repositoryId;
+        private final VersionIndex versionIndex;
+        private final long loadTime;
+
+        CachedVersioning(final String repositoryId, final VersionIndex versionIndex, final long loadTime) {
+            this.repositoryId = repositoryId;
+            this.versionIndex = versionIndex;
+            this.loadTime = loadTime;
+        }
+    }
+
+    /**
+     * A read of a metadata file in progress, which is removed from the pending reads once done.
+     */
+    private class PendingRead extends FutureTask<VersionIndex> {
+        private final String repositoryId;
+        private final String mdPath;
+
+        PendingRead(final Repository masterRepository, final String mdPath) {
+            super(new Callable<VersionIndex>() {
+                @Override
+                public VersionIndex call() throws Exception {
+                    final long readToken = getReadToken();
+                    final Versioning versioning = ParsedRequest.readVersioning(masterRepository, mdPath);
+                    if (versioning == null) {
+                        return null;
+                    }
+                    final VersionIndex versionIndex = new VersionIndex(versioning);
+                    put(masterRepository, mdPath, versionIndex, readToken);
+                    return versionIndex;
+                }
+            });
+            this.repositoryId = masterRepository.getId();
+            this.mdPath = mdPath;
+        }
+
+        @Override
+        protected void done() {
+            pendingReads.remove(mdPath, this);
+        }
+    }
+
+    private static class CachedConversion {
+        private final String repositoryId;
+        private final ConversionResult conversionResult;
+        private final String pathEnd;
+        private final String metadataFolder;
+        private final long resolveTime;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedConversion(final String repositoryId, final ConversionResult conversionResult, final String pathEnd,
+                final String metadataFolder, final long resolveTime) {
+            this.repositoryId = repositoryId;
+            this.conversionResult = conversionResult;
+            this.pathEnd = pathEnd;
+            this.metadataFolder = metadataFolder;
+            this.resolveTime = resolveTime;
+        }
+    }
+
+    private final UnzipRepository repository;
+    // versioning information by metadata path, in access order; expired information is kept as
+    // last known state until it is read again or is the least recently used
+    private final Map<String, CachedVersioning> cache = new LinkedHashMap<String, CachedVersioning>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedVersioning> eldest) {
+            return size() > MAX_METADATA_FILES;
+        }
+    };
+    // resolved virtual versions by the request path up to the virtual version, in access order
+    private final Map<String, CachedConversion> conversions = new LinkedHashMap<String, CachedConversion>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedConversion> eldest) {
+            return size() > MAX_CONVERSIONS;
+        }
+    };
+    private final ConcurrentMap<String, PendingRead> pendingReads = new ConcurrentHashMap<String, PendingRead>();
+    // incremented on every invalidation so that information read before cannot be cached afterwards
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final ThreadPoolExecutor refreshExecutor;
+    // separate from the refresh threads, which wait for the reads
+    private final ThreadPoolExecutor readExecutor;
+
+    public VersioningCache(final UnzipRepository repository) {
+        this.repository = repository;
+        refreshExecutor = createExecutor(REFRESH_THREADS, "Unzip version refresh " + repository.getId());
+        readExecutor = createExecutor(READ_THREADS, "Unzip metadata read " + repository.getId());
+    }
+
+    private static ThreadPoolExecutor createExecutor(final int threads, final String threadName) {
+        // a few threads at most, which terminate when idle
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the cached versioning information of the given metadata file in the given
+     *         repository together with its sorted versions, or <code>null</code> if it is not
+     *         cached or expired
+     */
+    VersionIndex get(final Repository masterRepository, final String mdPath) {
+        final CachedVersioning cached;
+        synchronized (cache) {
+            cached = cache.get(mdPath);
+        }
+        if (cached == null || !cached.repositoryId.equals(masterRepository.getId())) {
+            return null;
+        }
+        if (isExpired(cached)) {
+            // kept as last known state, see read(Repository, String)
+            return null;
+        }
+        return cached.versionIndex;
+    }
+
+    /**
+     * Reads the versioning information of the given metadata file from the given repository and
+     * caches it. If the file is already being read for another request, the result of that read is
+     * awaited instead of reading the file again. If a timeout is configured for the unzip
+     * repository, the file is read in the background, and all requests, including the one which
+     * started the read, wait at most the timeout; if there is expired information of the file in
+     * the cache, it is returned in that case, and also if the read fails. So slow master
+     * repositories do not block any request longer than the timeout.
+     * 
+     * @return the versioning information together with its sorted versions, or <code>null</code>
+     *         if the metadata file does not contain versioning information
+     * @throws LocalStorageException
+     *             if the file cannot be read, or the read takes longer than the timeout and there
+     *             is no earlier information
+     * @throws ItemNotFoundException
+     *             if the file does not exist
+     */
+    VersionIndex read(final Repository masterRepository, final String mdPath) throws LocalStorageException,
+            ItemNotFoundException {
+        final CachedVersioning cached;
+        synchronized (cache) {
+            cached = cache.get(mdPath);
+        }
+        final VersionIndex lastKnown = cached != null && cached.repositoryId.equals(masterRepository.getId())
+                ? cached.versionIndex : null;
+        PendingRead pendingRead = pendingReads.get(mdPath);
+        if (pendingRead == null || !pendingRead.repositoryId.equals(masterRepository.getId())) {
+            final PendingRead newRead = new PendingRead(masterRepository, mdPath);
+            pendingRead = pendingReads.putIfAbsent(mdPath, newRead);
+            if (pendingRead == null || !pendingRead.repositoryId.equals(masterRepository.getId())) {
+                pendingRead = newRead;
+                startRead(newRead, repository.getMetadataReadTimeout() > 0);
+            }
+        }
+        return awaitRead(pendingRead, lastKnown);
+    }
+
+    private void startRead(final PendingRead pendingRead, final boolean inBackground) {
+        if (inBackground) {
+            try {
+                readExecutor.execute(pendingRead);
+                return;
+            } catch (final RejectedExecutionException e) {
+                // read in the requesting thread instead
+            }
+        }
+        pendingRead.run();
+    }
+
+    private VersionIndex awaitRead(final PendingRead pendingRead, final VersionIndex lastKnown)
+            throws LocalStorageException, ItemNotFoundException {
+        final long timeout = repository.getMetadataReadTimeout();
+        try {
+            return timeout > 0 ? pendingRead.get(timeout, TimeUnit.SECONDS) : pendingRead.get();
+        } catch (final TimeoutException e) {
+            if (lastKnown != null) {
+                return lastKnown;
+            }
+            throw new LocalStorageException("Reading " + pendingRead.mdPath + " from repository "
+                    + pendingRead.repositoryId + " took longer than " + timeout + " seconds");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LocalStorageException("Interrupted while reading " + pendingRead.mdPath, e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ItemNotFoundException) {
+                throw (ItemNotFoundException) cause;
+            } else if (lastKnown != null) {
+                return lastKnown;
+            } else if (cause instanceof LocalStorageException) {
+                throw (LocalStorageException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new LocalStorageException(cause);
+        }
+    }
+
+    private boolean isExpired(final CachedVersioning cached) {
+        final long maxAge = repository.getMetadataMaxAge();
+        return maxAge > 0 && System.nanoTime() - cached.loadTime > TimeUnit.SECONDS.toNanos(maxAge);
+    }
+
+    /**
+     * Returns a token to be passed to {@link #put(Repository, String, VersionIndex, long)}. Must be
+     * obtained before the metadata file is read.
+     */
+    long getReadToken() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Caches the versioning information of the given metadata file, unless the file was
+     * invalidated since the given read token was obtained.
+     */
+    void put(final Repository masterRepository, final String mdPath, final VersionIndex versionIndex,
+            final long readToken) {
+        synchronized (cache) {
+            // checked under the lock, as invalidations remove the information under the lock
+            if (invalidationCount.get() == readToken) {
+                cache.put(mdPath, new CachedVersioning(masterRepository.getId(), versionIndex, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Resolves the given request, reusing the result of a previous request for the same artifact
+     * if the unzip repository is configured so. A result older than the configured refresh interval
+     * is still returned, but the request is resolved again in the background, so that only the
+     * first request for an artifact waits for the metadata files to be read.
+     * 
+     * @param masterRepository
+     *            the repository the metadata files are read from
+     * @param parsedRequest
+     *            the request
+     * @param requestPath
+     *            the path of the request
+     * @return the result of the conversion of the request path
+     * @throws LocalStorageException
+     *             if the request is resolved and the metadata cannot be read
+     */
+    ConversionResult resolve(final Repository masterRepository, final ParsedRequest parsedRequest,
+            final String requestPath) throws LocalStorageException {
+        final String virtualPath = parsedRequest.getVirtualPath();
+        final long refreshInterval = repository.getVersionRefreshInterval();
+        if (virtualPath == null || refreshInterval <= 0) {
+            return parsedRequest.resolve(masterRepository, this);
+        }
+        final CachedConversion cached;
+        synchronized (conversions) {
+            cached = conversions.get(virtualPath);
+        }
+        if (cached != null && cached.repositoryId.equals(masterRepository.getId())) {
+            if (System.nanoTime() - cached.resolveTime > TimeUnit.SECONDS.toNanos(refreshInterval)) {
+                refreshConversion(masterRepository, parsedRequest, cached);
+            }
+            return cached.conversionResult.forOtherPath(requestPath, cached.pathEnd, parsedRequest.getPathEnd());
+        }
+        final long readToken = getReadToken();
+        final ConversionResult conversionResult = parsedRequest.resolve(masterRepository, this);
+        putConversion(masterRepository, parsedRequest, conversionResult, readToken);
+        return conversionResult;
+    }
+
+    private void refreshConversion(final Repository masterRepository, final ParsedRequest parsedRequest,
+            final CachedConversion cached) {
+        if (!cached.refreshing.compareAndSet(false, true)) {
+            // already being refreshed
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final long readToken = getReadToken();
+                        final ConversionResult conversionResult = parsedRequest.resolve(masterRepository,
+                                VersioningCache.this);
+                        putConversion(masterRepository, parsedRequest, conversionResult, readToken);
+                    } catch (final LocalStorageException e) {
+                        // the previous result is served until a later refresh succeeds
+                    } finally {
+                        cached.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            cached.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Caches the given result, unless the metadata was invalidated since the given read token was
+     * obtained. A request which could not be converted, e.g. because the artifact has no version
+     * yet, is not cached, so that the version is found as soon as it is deployed.
+     */
+    private void putConversion(final Repository masterRepository, final ParsedRequest parsedRequest,
+            final ConversionResult conversionResult, final long readToken) {
+        final String virtualPath = parsedRequest.getVirtualPath();
+        synchronized (conversions) {
+            if (!conversionResult.isPathConverted()) {
+                // also drops a previous result which is refreshed
+                conversions.remove(virtualPath);
+            } else if (invalidationCount.get() == readToken) {
+                // checked under the lock, as invalidations remove the results under the lock
+                conversions.put(virtualPath, new CachedConversion(masterRepository.getId(), conversionResult,
+                        parsedRequest.getPathEnd(), parsedRequest.getMetadataFolder(), System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Discards the cached information affected by a change of the given item. As the master
+     * repository may be a group, items of all repositories are considered.
+     *
+     * @param itemPath
+     *            the path of the changed or deleted item
+     * @param collection
+     *            whether the item is a folder, in which case the information of all metadata files
+     *            below is discarded
+     */
+    public void invalidate(final String itemPath, final boolean collection) {
+        if (collection) {
+            invalidationCount.incrementAndGet();
+            final String prefix = itemPath.endsWith("/") ? itemPath : itemPath + "/";
+            synchronized (cache) {
+                for (final Iterator<String> mdPaths = cache.keySet().iterator(); mdPaths.hasNext();) {
+                    if (mdPaths.next().startsWith(prefix)) {
+                        mdPaths.remove();
+                    }
+                }
+            }
+            // later requests must not wait for reads started before the change
+            for (final String mdPath : pendingReads.keySet()) {
+                if (mdPath.startsWith(prefix)) {
+                    pendingReads.remove(mdPath);
+                }
+            }
+            // the folder may contain the metadata folder, or be a version folder within it
+            invalidateConversions(prefix, true);
+        } else if (itemPath.endsWith(ParsedRequest.MAVEN_METADATA_XML)) {
+            invalidationCount.incrementAndGet();
+            synchronized (cache) {
+                cache.remove(itemPath);
+            }
+            pendingReads.remove(itemPath);
+            invalidateConversions(itemPath, false);
+        }
+    }
+
+    private void invalidateConversions(final String path, final boolean folder) {
+        synchronized (conversions) {
+            for (final Iterator<CachedConversion> cached = conversions.values().iterator(); cached.hasNext();) {
+                final String metadataFolder = cached.next().metadataFolder;
+                if (path.startsWith(metadataFolder) || folder && metadataFolder.startsWith(path)) {
+                    cached.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the background threads of this cache, e.g. because the repository is removed. Reads
+     * and refreshes already queued are still done.
+     */
+    public void shutdown() {
+        refreshExecutor.shutdown();
+        readExecutor.shutdown();
+    }
+
+    boolean isShutdown() {
+        return refreshExecutor.isShutdown() && readExecutor.isShutdown();
+    }
+
+    /**
+     * Discards all cached information.
+     */
+    public void clear() {
+        invalidationCount.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+        }
+        pendingReads.clear();
+        synchronized (conversions) {
+            conversions.clear();
+        }
+    }
+}
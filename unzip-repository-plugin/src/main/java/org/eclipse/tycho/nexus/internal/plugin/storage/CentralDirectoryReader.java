@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip archive without inflating or even touching the entry data.
+ * In contrast to {@link java.util.zip.ZipFile} the offsets of the local file headers are exposed,
+ * which allows to locate the entry data directly in the archive file.
+ */
+final class CentralDirectoryReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_LENGTH = 56;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int CEN_HEADER_LENGTH = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int LOC_HEADER_LENGTH = 30;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private CentralDirectoryReader() {
+    }
+
+    /**
+     * Reads all entries from the central directory of the given archive.
+     *
+     * @param channel
+     *            the channel of the archive file
+     * @return the entries in the order of the central directory
+     * @throws ZipException
+     *             if the file is not a (supported) zip archive
+     * @throws IOException
+     *             if reading the file fails
+     */
+    static List<ZipArchiveEntry> read(final FileChannel channel) throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < EOCD_LENGTH) {
+            throw new ZipException("zip file is empty");
+        }
+
+        final int tailLength = (int) Math.min(fileSize, EOCD_LENGTH + MAX_COMMENT_LENGTH);
+        final long tailStart = fileSize - tailLength;
+        final ByteBuffer tail = readFully(channel, tailStart, tailLength);
+        final int eocdPosition = findEndOfCentralDirectory(tail);
+        if (eocdPosition < 0) {
+            throw new ZipException("end of central directory not found");
+        }
+
+        long entryCount = tail.getShort(eocdPosition + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocdPosition + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(eocdPosition + 16) & ZIP64_MAGIC;
+        long directoryEnd = tailStart + eocdPosition;
+
+        if (entryCount == 0xFFFF || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+            final long locatorPosition = tailStart + eocdPosition - ZIP64_EOCD_LOCATOR_LENGTH;
+            if (locatorPosition >= 0) {
+                final ByteBuffer locator = readFully(channel, locatorPosition, ZIP64_EOCD_LOCATOR_LENGTH);
+                if (locator.getInt(0) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                    final long zip64EocdPosition = locator.getLong(8);
+                    final ByteBuffer zip64Eocd = readFully(channel, zip64EocdPosition, ZIP64_EOCD_LENGTH);
+                    if (zip64Eocd.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                        throw new ZipException("invalid zip64 end of central directory");
+                    }
+                    entryCount = zip64Eocd.getLong(32);
+                    directorySize = zip64Eocd.getLong(40);
+                    directoryOffset = zip64Eocd.getLong(48);
+                    directoryEnd = zip64EocdPosition;
+                }
+            }
+        }
+
+        if (directorySize > Integer.MAX_VALUE || directorySize > directoryEnd) {
+            throw new ZipException("invalid central directory size");
+        }
+        // data prepended to the archive (e.g. self-extracting archives) shifts all offsets
+        final long prependedBytes = directoryEnd - directorySize - directoryOffset;
+        if (prependedBytes < 0) {
+            throw new ZipException("invalid central directory offset");
+        }
+
+        final ByteBuffer directory = readFully(channel, directoryEnd - directorySize, (int) directorySize);
+        final List<ZipArchiveEntry> entries = new ArrayList<ZipArchiveEntry>(
+                (int) Math.min(entryCount, Integer.MAX_VALUE / 2));
+        int position = 0;
+        while (position + CEN_HEADER_LENGTH <= directorySize) {
+            if (directory.getInt(position) != CEN_SIGNATURE) {
+                throw new ZipException("invalid central directory header at offset " + position);
+            }
+            position = readEntry(directory, position, prependedBytes, entries);
+        }
+        return entries;
+    }
+
+    private static int readEntry(final ByteBuffer directory, final int position, final long prependedBytes,
+            final List<ZipArchiveEntry> entries) throws ZipException {
+        final int method = directory.getShort(position + 10) & 0xFFFF;
+        final long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+        long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+        long size = directory.getInt(position + 24) & ZIP64_MAGIC;
+        final int nameLength = directory.getShort(position + 28) & 0xFFFF;
+        final int extraLength = directory.getShort(position + 30) & 0xFFFF;
+        final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+        long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+
+        final int namePosition = position + CEN_HEADER_LENGTH;
+        final int extraPosition = namePosition + nameLength;
+        final int nextPosition = extraPosition + extraLength + commentLength;
+        if (nextPosition > directory.limit()) {
+            throw new ZipException("invalid central directory header at offset " + position);
+        }
+
+        if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+            // the zip64 extra field only contains the values which are set to the magic value, in fixed order
+            int fieldPosition = findExtraField(directory, extraPosition, extraLength, ZIP64_EXTRA_ID);
+            if (fieldPosition >= 0) {
+                final int fieldEnd = fieldPosition + 4 + (directory.getShort(fieldPosition + 2) & 0xFFFF);
+                fieldPosition += 4;
+                if (size == ZIP64_MAGIC && fieldPosition + 8 <= fieldEnd) {
+                    size = directory.getLong(fieldPosition);
+                    fieldPosition += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC && fieldPosition + 8 <= fieldEnd) {
+                    compressedSize = directory.getLong(fieldPosition);
+                    fieldPosition += 8;
+                }
+                if (localHeaderOffset == ZIP64_MAGIC && fieldPosition + 8 <= fieldEnd) {
+                    localHeaderOffset = directory.getLong(fieldPosition);
+                }
+            }
+        }
+
+        final String rawName = decodeName(directory, namePosition, nameLength);
+        final boolean directoryEntry = rawName.endsWith("/");
+        final String name = directoryEntry ? rawName.substring(0, rawName.length() - 1) : rawName;
+        entries.add(new ZipArchiveEntry(name, directoryEntry, method, size, compressedSize, crc, localHeaderOffset
+                + prependedBytes));
+        return nextPosition;
+    }
+
+    private static int findExtraField(final ByteBuffer directory, final int extraPosition, final int extraLength,
+            final int headerId) {
+        int position = extraPosition;
+        final int end = extraPosition + extraLength;
+        while (position + 4 <= end) {
+            final int id = directory.getShort(position) & 0xFFFF;
+            final int length = directory.getShort(position + 2) & 0xFFFF;
+            if (id == headerId) {
+                return position + 4 + length <= end ? position : -1;
+            }
+            position += 4 + length;
+        }
+        return -1;
+    }
+
+    private static String decodeName(final ByteBuffer directory, final int position, final int length) {
+        // java.util.zip.ZipFile decodes all names as UTF-8 by default, so do we
+        return new String(directory.array(), directory.arrayOffset() + position, length, UTF_8);
+    }
+
+    private static int findEndOfCentralDirectory(final ByteBuffer tail) {
+        for (int position = tail.limit() - EOCD_LENGTH; position >= 0; position--) {
+            if (tail.getInt(position) == EOCD_SIGNATURE) {
+                final int commentLength = tail.getShort(position + 20) & 0xFFFF;
+                if (position + EOCD_LENGTH + commentLength <= tail.limit()) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the local file header of the given entry to determine where the entry data starts. The
+     * length of the extra field in the local header may differ from the one in the central
+     * directory, so this cannot be derived from the central directory alone.
+     *
+     * @param channel
+     *            the channel of the archive file
+     * @param entry
+     *            an entry read from the central directory of the archive
+     * @return the offset of the first byte of the entry data from the start of the archive file
+     * @throws ZipException
+     *             if there is no valid local file header at the offset of the entry
+     * @throws IOException
+     *             if reading the file fails
+     */
+    static long readDataOffset(final FileChannel channel, final ZipArchiveEntry entry) throws IOException {
+        final long headerOffset = entry.getLocalHeaderOffset();
+        if (headerOffset < 0) {
+            throw new ZipException("no local file header for " + entry.getName());
+        }
+        final ByteBuffer header = readFully(channel, headerOffset, LOC_HEADER_LENGTH);
+        if (header.getInt(0) != LOC_SIGNATURE) {
+            throw new ZipException("invalid local file header for " + entry.getName());
+        }
+        final int nameLength = header.getShort(26) & 0xFFFF;
+        final int extraLength = header.getShort(28) & 0xFFFF;
+        return headerOffset + LOC_HEADER_LENGTH + nameLength + extraLength;
+    }
+
+    static ByteBuffer readFully(final FileChannel channel, final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stream of a byte region of a file, e.g. the data of an uncompressed entry inside an archive. The
+ * region is read with positional reads from a channel which may be shared with other streams, so
+ * closing the stream does not close the channel. No {@link java.util.zip.ZipFile} is involved, and
+ * data is copied only once, directly into the caller's buffer.
+ */
+public class FileRegionInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    // reused by read() to avoid an allocation per byte
+    private final byte[] single = new byte[1];
+    private long position;
+    private long mark;
+
+    /**
+     * @param channel
+     *            the channel of the file
+     * @param position
+     *            the offset of the region from the start of the file
+     * @param length
+     *            the length of the region
+     */
+    public FileRegionInputStream(final FileChannel channel, final long position, final long length) {
+        this.channel = channel;
+        this.position = position;
+        this.mark = position;
+        this.end = position + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+        final int read = channel.read(buffer, position);
+        if (read < 0) {
+            throw new EOFException("File ends before the end of the region");
+        }
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final long skipped = Math.min(n, end - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(end - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        position = mark;
+    }
+}
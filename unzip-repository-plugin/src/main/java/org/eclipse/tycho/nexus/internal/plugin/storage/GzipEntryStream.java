@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+
+/**
+ * Turns the raw data of a DEFLATED archive entry into a gzip stream without inflating it. Zip and
+ * gzip use the same deflate format, so it is sufficient to add the gzip header and a trailer with
+ * the CRC and the size taken from the central directory.
+ */
+final class GzipEntryStream {
+
+    /**
+     * Extension of the virtual path under which an entry is served gzip compressed.
+     */
+    static final String EXTENSION = ".gz";
+
+    static final String MIME_TYPE = "application/x-gzip";
+
+    // magic, compression method deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] HEADER = new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int TRAILER_LENGTH = 8;
+
+    private GzipEntryStream() {
+    }
+
+    /**
+     * @return <code>true</code> if the given entry can be served as gzip stream
+     */
+    static boolean canWrap(final ZipArchiveEntry entry) {
+        return !entry.isDirectory() && entry.getMethod() == ZipEntry.DEFLATED;
+    }
+
+    /**
+     * @return the length of the gzip stream for the given entry
+     */
+    static long getLength(final ZipArchiveEntry entry) {
+        return HEADER.length + entry.getCompressedSize() + TRAILER_LENGTH;
+    }
+
+    /**
+     * Creates the gzip stream for the given entry. Closing the returned stream closes the stream
+     * of the raw data.
+     *
+     * @param entry
+     *            a DEFLATED entry
+     * @param rawData
+     *            the stream of the compressed data of the entry as stored in the archive
+     * @return the gzip stream
+     */
+    static InputStream wrap(final ZipArchiveEntry entry, final InputStream rawData) {
+        final InputStream header = new ByteArrayInputStream(HEADER);
+        final InputStream trailer = new ByteArrayInputStream(createTrailer(entry));
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(header, rawData, trailer)));
+    }
+
+    private static byte[] createTrailer(final ZipArchiveEntry entry) {
+        final byte[] trailer = new byte[TRAILER_LENGTH];
+        writeIntLittleEndian(trailer, 0, entry.getCrc());
+        // the size is stored modulo 2^32
+        writeIntLittleEndian(trailer, 4, entry.getSize());
+        return trailer;
+    }
+
+    private static void writeIntLittleEndian(final byte[] buffer, final int offset, final long value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+
+import org.sonatype.nexus.util.WrappingInputStream;
+
+/**
+ * Keeps the inflated data of a large DEFLATED entry in a file next to the cached archive, so that
+ * reads starting in the middle of the entry (e.g. resumed downloads) can seek instead of inflating
+ * the entry from its beginning. The spool file is written as a side effect of the first complete
+ * read of the entry and is used by all subsequent reads. The spool files of an archive are deleted
+ * with {@link #delete(File)} when the archive is removed from the cache.
+ */
+public final class InflatedEntrySpool {
+
+    /**
+     * Smaller entries are inflated fast enough to skip to any offset.
+     */
+    static final long MIN_ENTRY_SIZE = 1024 * 1024;
+
+    static final String DIRECTORY_SUFFIX = ".inflated";
+
+    private final File spoolFile;
+    private final long size;
+    private final SidecarListener listener;
+
+    /**
+     * @param location
+     *            the location of the archive in the cache, which differs from the archive file if
+     *            the archive is read in place from another repository
+     * @param entry
+     *            a DEFLATED entry of the archive
+     */
+    InflatedEntrySpool(final File location, final ZipArchiveEntry entry) {
+        this(location, entry, null);
+    }
+
+    /**
+     * @param location
+     *            the location of the archive in the cache
+     * @param entry
+     *            a DEFLATED entry of the archive
+     * @param listener
+     *            notified of the size of the spool file once it is written, or <code>null</code>
+     */
+    InflatedEntrySpool(final File location, final ZipArchiveEntry entry, final SidecarListener listener) {
+        final File directory = getDirectory(location);
+        // the name identifies the content, so a spool file of a modified archive is never used
+        this.spoolFile = new File(directory, Long.toHexString(entry.getCrc()) + "-" + entry.getSize() + "-"
+                + Integer.toHexString(entry.getName().hashCode()));
+        this.size = entry.getSize();
+        this.listener = listener;
+    }
+
+    static File getDirectory(final File location) {
+        return new File(location.getParentFile(), location.getName() + DIRECTORY_SUFFIX);
+    }
+
+    /**
+     * Deletes the spool files of all entries of the given archive.
+     *
+     * @param location
+     *            the location of the archive in the cache
+     */
+    public static void delete(final File location) {
+        final File directory = getDirectory(location);
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    static boolean isWorthSpooling(final ZipArchiveEntry entry) {
+        return entry.getMethod() == ZipEntry.DEFLATED && entry.getSize() >= MIN_ENTRY_SIZE;
+    }
+
+    boolean isAvailable() {
+        return spoolFile.isFile() && spoolFile.length() == size;
+    }
+
+    /**
+     * Opens the spooled data. Must only be called if the spool file is available.
+     *
+     * @return a stream of the inflated entry data which supports skipping without reading
+     * @throws IOException
+     *             if the spool file cannot be opened
+     */
+    InputStream open() throws IOException {
+        final FileChannel channel = new RandomAccessFile(spoolFile, "r").getChannel();
+        return new FileRegionInputStream(channel, 0, size) {
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a stream which writes the data read from the given stream to the spool file. The
+     * spool file becomes available only if the stream is read to its end; skipping or closing the
+     * stream before the end discards the data written so far. Failing to write the spool file does
+     * not affect the returned stream.
+     *
+     * @param inflatedData
+     *            the inflated entry data read from the archive
+     * @return the stream to be read instead of the given stream
+     */
+    InputStream spool(final InputStream inflatedData) {
+        final File directory = spoolFile.getParentFile();
+        directory.mkdirs();
+        try {
+            final File tempFile = File.createTempFile(spoolFile.getName(), Util.TEMP_FILE_SUFFIX, directory);
+            return new SpoolingInputStream(inflatedData, tempFile);
+        } catch (final IOException e) {
+            return inflatedData;
+        }
+    }
+
+    private class SpoolingInputStream extends WrappingInputStream {
+
+        private final File tempFile;
+        private OutputStream out;
+        private long written;
+
+        SpoolingInputStream(final InputStream inputStream, final File tempFile) throws IOException {
+            super(inputStream);
+            this.tempFile = tempFile;
+            this.out = new FileOutputStream(tempFile);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                finish();
+            } else if (out != null) {
+                try {
+                    out.write(b);
+                    written++;
+                } catch (final IOException e) {
+                    discard();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read < 0) {
+                finish();
+            } else if (out != null) {
+                try {
+                    out.write(b, off, read);
+                    written += read;
+                } catch (final IOException e) {
+                    discard();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped data is not available for the spool file
+            discard();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            discard();
+            super.close();
+        }
+
+        private void finish() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                if (written != size || !tempFile.renameTo(spoolFile)) {
+                    // incomplete, or another reader was faster
+                    tempFile.delete();
+                } else if (listener != null) {
+                    listener.written(size);
+                }
+            } catch (final IOException e) {
+                discard();
+            }
+        }
+
+        private void discard() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (final IOException e) {
+                // the file is deleted anyway
+            }
+            out = null;
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+/**
+ * Notified when a file derived from an archive, i.e. its persisted index or a spooled entry, is
+ * written next to the archive in the cache, e.g. to count it in the size of the cache.
+ */
+public interface SidecarListener {
+
+    /**
+     * @param size
+     *            the size of the written file
+     */
+    void written(long size);
+}
@@ -10,6 +10,10 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.storage;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 
@@ -17,6 +21,8 @@ public class Util {
 
     public static final String UNZIP_TYPE_EXTENSION = "-unzip";
 
+    public static final String TEMP_FILE_SUFFIX = ".tmp";
+
     /**
      * Checks whether the given item represents a zip file.
      * 
@@ -32,4 +38,71 @@ public class Util {
         }
         return false;
     }
+
+    /**
+     * Returns the number of bytes a cached archive occupies in the local storage together with
+     * its persisted index and its spooled entries. An archive which is a hard link to the file of
+     * another repository occupies no space of its own, so only the files next to it are counted.
+     * 
+     * @param archive
+     *            the cached archive
+     * @return the size of the archive and the files kept next to it
+     */
+    public static long getCachedSize(final File archive) {
+        long size = (isLinked(archive) ? 0 : archive.length())
+                + ZipArchiveIndexFile.getIndexFile(archive).length();
+        final File[] spoolFiles = InflatedEntrySpool.getDirectory(archive).listFiles();
+        if (spoolFiles != null) {
+            for (final File spoolFile : spoolFiles) {
+                size += spoolFile.length();
+            }
+        }
+        return size;
+    }
+
+    private static boolean isLinked(final File file) {
+        try {
+            final Object linkCount = Files.getAttribute(file.toPath(), "unix:nlink");
+            return linkCount instanceof Integer && (Integer) linkCount > 1;
+        } catch (final IOException e) {
+            return false;
+        } catch (final UnsupportedOperationException e) {
+            // no link count available on this file system
+            return false;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the given path denotes a file which is kept next to a cached archive, i.e. a
+     * persisted index, a spool directory or a file which is still being written, rather than a
+     * cached item itself.
+     * 
+     * @param path
+     *            the path or name of a file in the cache
+     * @return <code>true</code> if the file belongs to a cached archive, otherwise
+     *         <code>false</code>
+     */
+    public static boolean isArchiveSidecar(final String path) {
+        return path.endsWith(ZipArchiveIndexFile.FILE_SUFFIX) || path.endsWith(InflatedEntrySpool.DIRECTORY_SUFFIX)
+                || path.endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns the path of the archive a persisted index or a spool directory belongs to.
+     * 
+     * @param path
+     *            the path of a file kept next to an archive in the cache
+     * @return the path of the archive, or <code>null</code> if the path denotes no such file
+     */
+    public static String getArchivePathOfSidecar(final String path) {
+        if (path.endsWith(ZipArchiveIndexFile.FILE_SUFFIX)) {
+            return path.substring(0, path.length() - ZipArchiveIndexFile.FILE_SUFFIX.length());
+        }
+        if (path.endsWith(InflatedEntrySpool.DIRECTORY_SUFFIX)) {
+            return path.substring(0, path.length() - InflatedEntrySpool.DIRECTORY_SUFFIX.length());
+        }
+        return null;
+    }
 }
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+
+/**
+ * Metadata of a single entry of an archive as found in the central directory of the archive.
+ * Entries returned by a {@link ZipArchiveIndex} are created on each lookup and refer back to the
+ * index, which keeps their data beyond the lifetime of the entry objects.
+ */
+public final class ZipArchiveEntry {
+
+    private final String name;
+    private final boolean directory;
+    private final int method;
+    private final long size;
+    private final long compressedSize;
+    private final long crc;
+    private final long localHeaderOffset;
+    // the index which remembers the data offset, if any
+    private final ZipArchiveIndex index;
+    private final int slot;
+    // read lazily from the local file header, -1 if not yet known
+    private volatile long dataOffset = -1;
+
+    ZipArchiveEntry(final String name, final boolean directory, final int method, final long size,
+            final long compressedSize, final long crc, final long localHeaderOffset) {
+        this(name, directory, method, size, compressedSize, crc, localHeaderOffset, null, -1);
+    }
+
+    ZipArchiveEntry(final String name, final boolean directory, final int method, final long size,
+            final long compressedSize, final long crc, final long localHeaderOffset, final ZipArchiveIndex index,
+            final int slot) {
+        this.name = name;
+        this.directory = directory;
+        this.method = method;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.crc = crc;
+        this.localHeaderOffset = localHeaderOffset;
+        this.index = index;
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the path of the entry relative to the archive root. The returned path is always
+     * without trailing slash (this is consistent with {@link ZippedItem#getPathInZip()}).
+     *
+     * @return the normalized path of the entry
+     */
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the compression method of the entry, e.g. {@link ZipEntry#STORED} or
+     *         {@link ZipEntry#DEFLATED}
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the uncompressed size of the entry
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * @return the offset of the local file header of the entry from the start of the archive file,
+     *         or <code>-1</code> for a directory which is not contained in the archive as entry of
+     *         its own
+     */
+    public long getLocalHeaderOffset() {
+        return localHeaderOffset;
+    }
+
+    /**
+     * Returns the offset of the entry data from the start of the archive file. The offset is read
+     * from the local file header on first access and remembered in the index afterwards.
+     *
+     * @param channel
+     *            the channel of the archive file this entry was read from
+     * @return the offset of the first byte of the (possibly compressed) entry data
+     * @throws IOException
+     *             if the local file header cannot be read
+     */
+    public long getDataOffset(final FileChannel channel) throws IOException {
+        long offset = dataOffset;
+        if (offset < 0 && index != null) {
+            offset = index.getDataOffset(slot, localHeaderOffset);
+        }
+        if (offset < 0) {
+            offset = CentralDirectoryReader.readDataOffset(channel, this);
+            if (index != null) {
+                index.setDataOffset(slot, localHeaderOffset, offset);
+            }
+        }
+        dataOffset = offset;
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,487 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of the central directory of an archive file. The index is built once when the archive is
+ * first opened and allows to look up entries by their path and to list the direct children of a
+ * directory without scanning the archive. Directories which are not contained in the archive as
+ * entries of their own but only as parent of other entries are added to the index as well. An
+ * index is only valid as long as the archive file is not modified, see {@link #isUpToDate(File)}.
+ * <p>
+ * The index is kept outside of the Java heap in a single buffer of primitive data, which is either
+ * a direct buffer or the memory mapped index file next to the archive (see
+ * {@link ZipArchiveIndexFile}). The buffer consists of
+ * <ul>
+ * <li>a header with the size and modification time of the archive and the sizes of the following
+ * sections,</li>
+ * <li>a record of fixed size per entry, with the entries linked to their first child and next
+ * sibling to represent the directory tree,</li>
+ * <li>an open addressing hash table of the entry names, and</li>
+ * <li>the UTF-8 encoded entry names.</li>
+ * </ul>
+ * {@link ZipArchiveEntry} objects are only created for the entries returned by a lookup.
+ */
+public final class ZipArchiveIndex {
+
+    static final int MAGIC = 0x555A4958;
+    static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NONE = -1;
+
+    // header
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_ARCHIVE_LENGTH = 8;
+    private static final int HEADER_ARCHIVE_LAST_MODIFIED = 16;
+    private static final int HEADER_ENTRY_COUNT = 24;
+    private static final int HEADER_TABLE_SIZE = 28;
+    private static final int HEADER_ROOT_FIRST_CHILD = 32;
+    private static final int HEADER_NAMES_LENGTH = 36;
+    private static final int HEADER_LENGTH = 40;
+
+    // entry record, with all fields aligned to their size
+    private static final int RECORD_NAME_OFFSET = 0;
+    private static final int RECORD_NAME_LENGTH = 4;
+    private static final int RECORD_NAME_HASH = 8;
+    private static final int RECORD_METHOD = 12;
+    private static final int RECORD_FLAGS = 14;
+    private static final int RECORD_SIZE = 16;
+    private static final int RECORD_COMPRESSED_SIZE = 24;
+    private static final int RECORD_LOCAL_HEADER_OFFSET = 32;
+    private static final int RECORD_CRC = 40;
+    private static final int RECORD_FIRST_CHILD = 44;
+    private static final int RECORD_NEXT_SIBLING = 48;
+    // data offset relative to the local header offset, NONE if not yet known
+    private static final int RECORD_DATA_OFFSET_DELTA = 52;
+    private static final int RECORD_LENGTH = 56;
+
+    private static final short FLAG_DIRECTORY = 1;
+
+    private final ByteBuffer data;
+    private final int entryCount;
+    private final int tableSize;
+    private final int tableOffset;
+    private final int namesOffset;
+
+    private ZipArchiveIndex(final ByteBuffer data) {
+        this.data = data;
+        this.entryCount = data.getInt(HEADER_ENTRY_COUNT);
+        this.tableSize = data.getInt(HEADER_TABLE_SIZE);
+        this.tableOffset = HEADER_LENGTH + entryCount * RECORD_LENGTH;
+        this.namesOffset = tableOffset + tableSize * 4;
+    }
+
+    /**
+     * Creates an index backed by the given buffer, e.g. a mapped index file. All offsets, counts
+     * and links in the buffer are validated, so that a corrupt index file is rejected and read
+     * from the archive again rather than failing on a later lookup.
+     *
+     * @return the index, or <code>null</code> if the buffer does not contain a consistent index of
+     *         the current format
+     */
+    static ZipArchiveIndex wrap(final ByteBuffer data) {
+        if (data.capacity() < HEADER_LENGTH || data.getInt(HEADER_MAGIC) != MAGIC
+                || data.getInt(HEADER_VERSION) != VERSION) {
+            return null;
+        }
+        final int entryCount = data.getInt(HEADER_ENTRY_COUNT);
+        final int tableSize = data.getInt(HEADER_TABLE_SIZE);
+        final int namesLength = data.getInt(HEADER_NAMES_LENGTH);
+        if (entryCount < 0 || namesLength < 0 || tableSize <= entryCount || Integer.bitCount(tableSize) != 1) {
+            return null;
+        }
+        final long expectedLength = HEADER_LENGTH + (long) entryCount * RECORD_LENGTH + (long) tableSize * 4
+                + namesLength;
+        if (expectedLength != data.capacity() || !isConsistent(data, entryCount, tableSize, namesLength)) {
+            return null;
+        }
+        return new ZipArchiveIndex(data);
+    }
+
+    private static boolean isConsistent(final ByteBuffer data, final int entryCount, final int tableSize,
+            final int namesLength) {
+        final long archiveLength = data.getLong(HEADER_ARCHIVE_LENGTH);
+        // every entry is linked at most once as first child or next sibling, so the tree has no cycles
+        final boolean[] linked = new boolean[entryCount];
+        if (!isValidLink(data.getInt(HEADER_ROOT_FIRST_CHILD), linked)) {
+            return false;
+        }
+        for (int slot = 0; slot < entryCount; slot++) {
+            final int record = HEADER_LENGTH + slot * RECORD_LENGTH;
+            final int nameOffset = data.getInt(record + RECORD_NAME_OFFSET);
+            final int nameLength = data.getInt(record + RECORD_NAME_LENGTH);
+            if (nameOffset < 0 || nameLength < 0 || (long) nameOffset + nameLength > namesLength) {
+                return false;
+            }
+            // NONE for directories which are only implicitly contained
+            final long localHeaderOffset = data.getLong(record + RECORD_LOCAL_HEADER_OFFSET);
+            if (data.getLong(record + RECORD_SIZE) < 0 || data.getLong(record + RECORD_COMPRESSED_SIZE) < 0
+                    || localHeaderOffset < NONE || localHeaderOffset > archiveLength
+                    || data.getInt(record + RECORD_DATA_OFFSET_DELTA) < NONE) {
+                return false;
+            }
+            if (!isValidLink(data.getInt(record + RECORD_FIRST_CHILD), linked)
+                    || !isValidLink(data.getInt(record + RECORD_NEXT_SIBLING), linked)) {
+                return false;
+            }
+        }
+        // lookups stop at the first empty bucket, so there must be one
+        final int tableOffset = HEADER_LENGTH + entryCount * RECORD_LENGTH;
+        int usedBuckets = 0;
+        for (int bucket = 0; bucket < tableSize; bucket++) {
+            final int slot = data.getInt(tableOffset + bucket * 4) - 1;
+            if (slot < NONE || slot >= entryCount) {
+                return false;
+            }
+            if (slot != NONE) {
+                usedBuckets++;
+            }
+        }
+        return usedBuckets == entryCount;
+    }
+
+    private static boolean isValidLink(final int slot, final boolean[] linked) {
+        if (slot == NONE) {
+            return true;
+        }
+        if (slot < 0 || slot >= linked.length || linked[slot]) {
+            return false;
+        }
+        linked[slot] = true;
+        return true;
+    }
+
+    /**
+     * Reads the central directory of the given archive and creates an index for it.
+     *
+     * @param archive
+     *            the archive file
+     * @return the index of the archive
+     * @throws IOException
+     *             if the file cannot be read or is not a zip archive
+     */
+    public static ZipArchiveIndex read(final File archive) throws IOException {
+        // take the time stamp before reading so that a concurrent modification invalidates the index
+        final long lastModified = archive.lastModified();
+        final FileInputStream in = new FileInputStream(archive);
+        try {
+            final List<ZipArchiveEntry> entryList = CentralDirectoryReader.read(in.getChannel());
+            final Map<String, ZipArchiveEntry> entries = new LinkedHashMap<String, ZipArchiveEntry>(
+                    entryList.size() * 4 / 3 + 1);
+            for (final ZipArchiveEntry entry : entryList) {
+                // like java.util.zip.ZipFile, the first entry with a given name wins
+                if (!entries.containsKey(entry.getName())) {
+                    entries.put(entry.getName(), entry);
+                }
+            }
+            final Map<String, List<ZipArchiveEntry>> children = new HashMap<String, List<ZipArchiveEntry>>();
+            for (final ZipArchiveEntry entry : new ArrayList<ZipArchiveEntry>(entries.values())) {
+                addToParent(entry, entries, children);
+            }
+            return new ZipArchiveIndex(encode(in.getChannel().size(), lastModified, entries, children));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void addToParent(final ZipArchiveEntry entry, final Map<String, ZipArchiveEntry> entries,
+            final Map<String, List<ZipArchiveEntry>> children) {
+        final String name = entry.getName();
+        if (name.length() == 0) {
+            // an entry for the archive root itself is no child of anything
+            return;
+        }
+        final int separator = name.lastIndexOf('/');
+        final String parentName = separator < 0 ? "" : name.substring(0, separator);
+        if (parentName.length() > 0 && !entries.containsKey(parentName)) {
+            final ZipArchiveEntry implicitDirectory = new ZipArchiveEntry(parentName, true, ZipEntry.STORED, 0, 0, 0,
+                    -1);
+            entries.put(parentName, implicitDirectory);
+            addToParent(implicitDirectory, entries, children);
+        }
+        List<ZipArchiveEntry> siblings = children.get(parentName);
+        if (siblings == null) {
+            siblings = new ArrayList<ZipArchiveEntry>(4);
+            children.put(parentName, siblings);
+        }
+        siblings.add(entry);
+    }
+
+    private static ByteBuffer encode(final long archiveLength, final long archiveLastModified,
+            final Map<String, ZipArchiveEntry> entries, final Map<String, List<ZipArchiveEntry>> children) {
+        final int entryCount = entries.size();
+        final Map<ZipArchiveEntry, Integer> slots = new IdentityHashMap<ZipArchiveEntry, Integer>(entryCount);
+        final byte[][] names = new byte[entryCount][];
+        int namesLength = 0;
+        for (final ZipArchiveEntry entry : entries.values()) {
+            final int slot = slots.size();
+            slots.put(entry, slot);
+            names[slot] = entry.getName().getBytes(UTF_8);
+            namesLength += names[slot].length;
+        }
+        int tableSize = 2;
+        while (tableSize < entryCount * 2) {
+            tableSize <<= 1;
+        }
+
+        final int tableOffset = HEADER_LENGTH + entryCount * RECORD_LENGTH;
+        final int namesOffset = tableOffset + tableSize * 4;
+        final ByteBuffer data = ByteBuffer.allocateDirect(namesOffset + namesLength);
+        data.putInt(HEADER_MAGIC, MAGIC);
+        data.putInt(HEADER_VERSION, VERSION);
+        data.putLong(HEADER_ARCHIVE_LENGTH, archiveLength);
+        data.putLong(HEADER_ARCHIVE_LAST_MODIFIED, archiveLastModified);
+        data.putInt(HEADER_ENTRY_COUNT, entryCount);
+        data.putInt(HEADER_TABLE_SIZE, tableSize);
+        data.putInt(HEADER_ROOT_FIRST_CHILD, NONE);
+        data.putInt(HEADER_NAMES_LENGTH, namesLength);
+
+        int nameOffset = 0;
+        for (final ZipArchiveEntry entry : entries.values()) {
+            final int slot = slots.get(entry);
+            final int record = HEADER_LENGTH + slot * RECORD_LENGTH;
+            final int hash = entry.getName().hashCode();
+            data.putInt(record + RECORD_NAME_OFFSET, nameOffset);
+            data.putInt(record + RECORD_NAME_LENGTH, names[slot].length);
+            data.putInt(record + RECORD_NAME_HASH, hash);
+            data.putShort(record + RECORD_METHOD, (short) entry.getMethod());
+            data.putShort(record + RECORD_FLAGS, entry.isDirectory() ? FLAG_DIRECTORY : 0);
+            data.putLong(record + RECORD_SIZE, entry.getSize());
+            data.putLong(record + RECORD_COMPRESSED_SIZE, entry.getCompressedSize());
+            data.putLong(record + RECORD_LOCAL_HEADER_OFFSET, entry.getLocalHeaderOffset());
+            data.putInt(record + RECORD_CRC, (int) entry.getCrc());
+            data.putInt(record + RECORD_FIRST_CHILD, NONE);
+            data.putInt(record + RECORD_NEXT_SIBLING, NONE);
+            data.putInt(record + RECORD_DATA_OFFSET_DELTA, NONE);
+
+            int bucket = bucket(hash, tableSize);
+            while (data.getInt(tableOffset + bucket * 4) != 0) {
+                bucket = (bucket + 1) & (tableSize - 1);
+            }
+            data.putInt(tableOffset + bucket * 4, slot + 1);
+
+            for (int i = 0; i < names[slot].length; i++) {
+                data.put(namesOffset + nameOffset + i, names[slot][i]);
+            }
+            nameOffset += names[slot].length;
+        }
+
+        for (final Map.Entry<String, List<ZipArchiveEntry>> childList : children.entrySet()) {
+            final String parentName = childList.getKey();
+            int link = parentName.length() == 0 ? HEADER_ROOT_FIRST_CHILD : HEADER_LENGTH
+                    + slots.get(entries.get(parentName)) * RECORD_LENGTH + RECORD_FIRST_CHILD;
+            for (final ZipArchiveEntry child : childList.getValue()) {
+                final int slot = slots.get(child);
+                data.putInt(link, slot);
+                link = HEADER_LENGTH + slot * RECORD_LENGTH + RECORD_NEXT_SIBLING;
+            }
+        }
+        return data;
+    }
+
+    private static int bucket(final int hash, final int tableSize) {
+        return (hash ^ (hash >>> 16)) & (tableSize - 1);
+    }
+
+    /**
+     * Returns the entry for the given path.
+     *
+     * @param pathInZip
+     *            the path of the entry relative to the archive root, with or without trailing
+     *            slash
+     * @return the entry, or <code>null</code> if the archive does not contain such an entry
+     */
+    public ZipArchiveEntry getEntry(final String pathInZip) {
+        final int slot = findSlot(removeTrailingSlash(pathInZip));
+        return slot == NONE ? null : getEntryInSlot(slot);
+    }
+
+    private int findSlot(final String name) {
+        final int hash = name.hashCode();
+        byte[] encodedName = null;
+        int bucket = bucket(hash, tableSize);
+        for (int probes = 0; probes < tableSize; probes++) {
+            final int slot = data.getInt(tableOffset + bucket * 4) - 1;
+            if (slot == NONE) {
+                return NONE;
+            }
+            final int record = HEADER_LENGTH + slot * RECORD_LENGTH;
+            if (data.getInt(record + RECORD_NAME_HASH) == hash) {
+                if (encodedName == null) {
+                    encodedName = name.getBytes(UTF_8);
+                }
+                if (hasName(record, encodedName)) {
+                    return slot;
+                }
+            }
+            bucket = (bucket + 1) & (tableSize - 1);
+        }
+        return NONE;
+    }
+
+    private boolean hasName(final int record, final byte[] encodedName) {
+        if (data.getInt(record + RECORD_NAME_LENGTH) != encodedName.length) {
+            return false;
+        }
+        final int nameStart = namesOffset + data.getInt(record + RECORD_NAME_OFFSET);
+        for (int i = 0; i < encodedName.length; i++) {
+            if (data.get(nameStart + i) != encodedName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ZipArchiveEntry getEntryInSlot(final int slot) {
+        final int record = HEADER_LENGTH + slot * RECORD_LENGTH;
+        final byte[] name = new byte[data.getInt(record + RECORD_NAME_LENGTH)];
+        final int nameStart = namesOffset + data.getInt(record + RECORD_NAME_OFFSET);
+        for (int i = 0; i < name.length; i++) {
+            name[i] = data.get(nameStart + i);
+        }
+        return new ZipArchiveEntry(new String(name, UTF_8),
+                (data.getShort(record + RECORD_FLAGS) & FLAG_DIRECTORY) != 0,
+                data.getShort(record + RECORD_METHOD) & 0xFFFF, data.getLong(record + RECORD_SIZE),
+                data.getLong(record + RECORD_COMPRESSED_SIZE), data.getInt(record + RECORD_CRC) & 0xFFFFFFFFL,
+                data.getLong(record + RECORD_LOCAL_HEADER_OFFSET), this, slot);
+    }
+
+    /**
+     * Returns the direct children of the given directory.
+     *
+     * @param pathInZip
+     *            the path of the directory relative to the archive root, with or without trailing
+     *            slash; the empty string denotes the archive root
+     * @return the entries which are direct children of the directory, in the order of the central
+     *         directory; an empty list if there are no such entries
+     */
+    public List<ZipArchiveEntry> getChildren(final String pathInZip) {
+        final String name = removeTrailingSlash(pathInZip);
+        int child;
+        if (name.length() == 0) {
+            child = data.getInt(HEADER_ROOT_FIRST_CHILD);
+        } else {
+            final int slot = findSlot(name);
+            if (slot == NONE) {
+                return Collections.emptyList();
+            }
+            child = data.getInt(HEADER_LENGTH + slot * RECORD_LENGTH + RECORD_FIRST_CHILD);
+        }
+        final List<ZipArchiveEntry> result = new ArrayList<ZipArchiveEntry>();
+        while (child != NONE && result.size() < entryCount) {
+            result.add(getEntryInSlot(child));
+            child = data.getInt(HEADER_LENGTH + child * RECORD_LENGTH + RECORD_NEXT_SIBLING);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static String removeTrailingSlash(final String path) {
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * @return all entries of the archive, including the implicit directories; the entries are
+     *         created on access
+     */
+    public Collection<ZipArchiveEntry> getEntries() {
+        return new AbstractList<ZipArchiveEntry>() {
+            @Override
+            public ZipArchiveEntry get(final int index) {
+                if (index < 0 || index >= entryCount) {
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                }
+                return getEntryInSlot(index);
+            }
+
+            @Override
+            public int size() {
+                return entryCount;
+            }
+        };
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * @return the remembered offset of the entry data, or <code>-1</code> if not yet known
+     */
+    long getDataOffset(final int slot, final long localHeaderOffset) {
+        final int delta = data.getInt(HEADER_LENGTH + slot * RECORD_LENGTH + RECORD_DATA_OFFSET_DELTA);
+        return delta == NONE ? -1 : localHeaderOffset + delta;
+    }
+
+    void setDataOffset(final int slot, final long localHeaderOffset, final long dataOffset) {
+        try {
+            // the delta is bounded by the local header length, so it can be written atomically
+            data.putInt(HEADER_LENGTH + slot * RECORD_LENGTH + RECORD_DATA_OFFSET_DELTA,
+                    (int) (dataOffset - localHeaderOffset));
+        } catch (final ReadOnlyBufferException e) {
+            // not remembered
+        }
+    }
+
+    /**
+     * @return a read-only view of the complete data of this index
+     */
+    ByteBuffer getData() {
+        final ByteBuffer view = data.asReadOnlyBuffer();
+        view.clear();
+        return view;
+    }
+
+    /**
+     * Checks whether this index still describes the given archive file.
+     *
+     * @param archive
+     *            the archive file this index was read from
+     * @return <code>true</code> if the file was not modified since the index was read
+     */
+    public boolean isUpToDate(final File archive) {
+        return isUpToDate(archive.length(), archive.lastModified());
+    }
+
+    /**
+     * Checks whether this index still describes an archive file of the given size and
+     * modification time.
+     *
+     * @param archiveLength
+     *            the current size of the archive file
+     * @param archiveLastModified
+     *            the current modification time of the archive file
+     * @return <code>true</code> if the archive had the same size and modification time when the
+     *         index was read
+     */
+    public boolean isUpToDate(final long archiveLength, final long archiveLastModified) {
+        return archiveLastModified == data.getLong(HEADER_ARCHIVE_LAST_MODIFIED)
+                && archiveLength == data.getLong(HEADER_ARCHIVE_LENGTH);
+    }
+}
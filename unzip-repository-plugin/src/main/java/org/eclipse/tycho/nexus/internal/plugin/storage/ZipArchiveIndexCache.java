@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link ZipArchiveIndex} of the most recently used archives. An index is keyed by the
+ * path of the cached archive file and is rebuilt if the file was modified in the meantime. Indexes
+ * are also persisted next to the archives, so that they survive a restart and the eviction from
+ * this cache.
+ */
+public class ZipArchiveIndexCache {
+
+    private static final int DEFAULT_MAX_INDEXES = 256;
+
+    private final Map<String, ZipArchiveIndex> indexes;
+
+    public ZipArchiveIndexCache() {
+        this(DEFAULT_MAX_INDEXES);
+    }
+
+    public ZipArchiveIndexCache(final int maxIndexes) {
+        this.indexes = new LinkedHashMap<String, ZipArchiveIndex>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, ZipArchiveIndex> eldest) {
+                return size() > maxIndexes;
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the given archive. The index is loaded from its persisted copy, or read
+     * from the archive if there is no up-to-date copy, if there is no index for the archive yet or
+     * if the archive was modified since the index was read.
+     *
+     * @param archive
+     *            the archive file
+     * @return the index of the archive
+     * @throws IOException
+     *             if the archive cannot be read
+     */
+    public ZipArchiveIndex getIndex(final File archive) throws IOException {
+        return getIndex(archive, archive);
+    }
+
+    /**
+     * Returns the index of the given archive like {@link #getIndex(File)}, but keeps the persisted
+     * copy of the index next to the given location instead of next to the archive, e.g. because the
+     * archive is not located in the cache.
+     *
+     * @param archive
+     *            the archive file
+     * @param location
+     *            the location of the archive in the cache
+     * @return the index of the archive
+     * @throws IOException
+     *             if the archive cannot be read
+     */
+    public ZipArchiveIndex getIndex(final File archive, final File location) throws IOException {
+        return getIndex(archive, location, archive.length(), archive.lastModified());
+    }
+
+    /**
+     * Returns the index of the given archive like {@link #getIndex(File, File)}, for an archive of
+     * which the current size and modification time are already known, so that the archive file is
+     * not accessed if its index is cached.
+     *
+     * @param archive
+     *            the archive file
+     * @param location
+     *            the location of the archive in the cache
+     * @param archiveLength
+     *            the current size of the archive file
+     * @param archiveLastModified
+     *            the current modification time of the archive file
+     * @return the index of the archive
+     * @throws IOException
+     *             if the archive cannot be read
+     */
+    public ZipArchiveIndex getIndex(final File archive, final File location, final long archiveLength,
+            final long archiveLastModified) throws IOException {
+        return getIndex(archive, location, archiveLength, archiveLastModified, null);
+    }
+
+    /**
+     * Returns the index of the given archive like {@link #getIndex(File, File, long, long)}, and
+     * notifies the given listener if the index is persisted.
+     *
+     * @param archive
+     *            the archive file
+     * @param location
+     *            the location of the archive in the cache
+     * @param archiveLength
+     *            the current size of the archive file
+     * @param archiveLastModified
+     *            the current modification time of the archive file
+     * @param listener
+     *            notified of the size of the persisted index, or <code>null</code>
+     * @return the index of the archive
+     * @throws IOException
+     *             if the archive cannot be read
+     */
+    public ZipArchiveIndex getIndex(final File archive, final File location, final long archiveLength,
+            final long archiveLastModified, final SidecarListener listener) throws IOException {
+        final String key = archive.getAbsolutePath();
+        synchronized (indexes) {
+            final ZipArchiveIndex index = indexes.get(key);
+            if (index != null && index.isUpToDate(archiveLength, archiveLastModified)) {
+                return index;
+            }
+        }
+        // read outside of the lock; concurrent reads of the same archive are rare and harmless
+        ZipArchiveIndex index = ZipArchiveIndexFile.load(archive, location);
+        if (index == null) {
+            index = ZipArchiveIndex.read(archive);
+            try {
+                final long size = ZipArchiveIndexFile.store(index, location);
+                if (listener != null) {
+                    listener.written(size);
+                }
+                // prefer the mapped file to the direct buffer, which is limited by the JVM
+                final ZipArchiveIndex mappedIndex = ZipArchiveIndexFile.load(archive, location);
+                if (mappedIndex != null) {
+                    index = mappedIndex;
+                }
+            } catch (final IOException e) {
+                // the index is read from the archive again next time
+            }
+        }
+        synchronized (indexes) {
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drops the index of the given archive including its persisted copy, e.g. because the archive
+     * is deleted.
+     *
+     * @param archive
+     *            the archive file
+     */
+    public void invalidate(final File archive) {
+        invalidate(archive, archive);
+    }
+
+    /**
+     * Drops the index of the given archive like {@link #invalidate(File)}, for an archive of which
+     * the persisted copy of the index is kept next to the given location.
+     *
+     * @param archive
+     *            the archive file
+     * @param location
+     *            the location of the archive in the cache
+     */
+    public void invalidate(final File archive, final File location) {
+        synchronized (indexes) {
+            indexes.remove(archive.getAbsolutePath());
+        }
+        ZipArchiveIndexFile.delete(location);
+    }
+
+    /**
+     * Checks whether the persisted copy of the index kept next to the given location describes the
+     * current state of the given archive.
+     *
+     * @param archive
+     *            the archive file
+     * @param location
+     *            the location of the archive in the cache
+     * @return <code>true</code> if there is an up-to-date persisted index
+     */
+    public boolean hasPersistedIndex(final File archive, final File location) {
+        return ZipArchiveIndexFile.load(archive, location) != null;
+    }
+}
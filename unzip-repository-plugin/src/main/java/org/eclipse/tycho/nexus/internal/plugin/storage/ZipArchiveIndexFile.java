@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persists the {@link ZipArchiveIndex} of a cached archive in a file next to the archive, so that
+ * the index is available without reading the central directory again, e.g. after a restart. The
+ * file contains the data of the index as it is; a loaded index is backed by the memory mapped
+ * file. For an archive which is read in place from another repository, the index file is kept at
+ * the location the archive would have in the cache instead.
+ */
+final class ZipArchiveIndexFile {
+
+    static final String FILE_SUFFIX = ".index";
+
+    private ZipArchiveIndexFile() {
+    }
+
+    static File getIndexFile(final File location) {
+        return new File(location.getParentFile(), location.getName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the persisted index of the given cached archive.
+     *
+     * @param archive
+     *            the archive file
+     * @return the index, or <code>null</code> if there is no index file or it does not describe
+     *         the current state of the archive
+     */
+    static ZipArchiveIndex load(final File archive) {
+        return load(archive, archive);
+    }
+
+    /**
+     * Loads the persisted index of the given archive.
+     *
+     * @param archive
+     *            the archive file
+     * @param location
+     *            the location of the archive in the cache, next to which the index file is kept
+     * @return the index, or <code>null</code> if there is no index file or it does not describe
+     *         the current state of the archive
+     */
+    static ZipArchiveIndex load(final File archive, final File location) {
+        final File indexFile = getIndexFile(location);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            final ZipArchiveIndex index = ZipArchiveIndex.wrap(map(indexFile));
+            if (index == null || !index.isUpToDate(archive)) {
+                return null;
+            }
+            return index;
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(final File indexFile) throws IOException {
+        RandomAccessFile file;
+        FileChannel.MapMode mode;
+        try {
+            // writable, so that data offsets found later are remembered in the file
+            file = new RandomAccessFile(indexFile, "rw");
+            mode = FileChannel.MapMode.READ_WRITE;
+        } catch (final IOException e) {
+            file = new RandomAccessFile(indexFile, "r");
+            mode = FileChannel.MapMode.READ_ONLY;
+        }
+        try {
+            // the mapping stays valid after the file is closed
+            final FileChannel channel = file.getChannel();
+            return channel.map(mode, 0, channel.size());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the given index next to the given location. The index file is replaced atomically, so
+     * that concurrent readers either see the old or the new index.
+     *
+     * @param index
+     *            the index of the archive
+     * @param location
+     *            the location of the archive in the cache
+     * @return the size of the written index file
+     * @throws IOException
+     *             if the index file cannot be written
+     */
+    static long store(final ZipArchiveIndex index, final File location) throws IOException {
+        final File indexFile = getIndexFile(location);
+        // the folder does not exist yet if the archive is read in place
+        location.getParentFile().mkdirs();
+        final File tempFile = File.createTempFile(indexFile.getName(), Util.TEMP_FILE_SUFFIX, location.getParentFile());
+        final long size;
+        try {
+            final FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                final ByteBuffer data = index.getData();
+                size = data.remaining();
+                while (data.hasRemaining()) {
+                    out.getChannel().write(data);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(indexFile)) {
+                // the target may not be replaced on some platforms
+                indexFile.delete();
+                if (!tempFile.renameTo(indexFile)) {
+                    throw new IOException("Unable to write " + indexFile);
+                }
+            }
+        } finally {
+            tempFile.delete();
+        }
+        return size;
+    }
+
+    /**
+     * Deletes the persisted index of the archive at the given location, if any.
+     *
+     * @param location
+     *            the location of the archive in the cache
+     */
+    static void delete(final File location) {
+        getIndexFile(location).delete();
+    }
+}
@@ -16,6 +16,7 @@ import java.util.LinkedList;
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
 import org.eclipse.tycho.nexus.internal.plugin.cache.ConversionResult;
 import org.eclipse.tycho.nexus.internal.plugin.cache.RequestPathConverter;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ResolutionContext;
 import org.slf4j.Logger;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
@@ -61,7 +62,8 @@ public class ZipAwareStorageCollectionItem extends DefaultStorageCollectionItem
         final ResourceStoreRequest request = new ResourceStoreRequest(collectionStorageItem.getPath()
                 + "/artifact-1-SNAPSHOT.xml");
         final ConversionResult snapshotConversionResult = RequestPathConverter.convert(
-                repository.getMasterRepository(), request, repository.isUseVirtualVersion());
+                repository.getMasterRepository(), request, repository.isUseVirtualVersion(),
+                repository.getVersioningCache(), ResolutionContext.get(getItemContext(), repository));
 
         Collection<StorageItem> members;
         try {
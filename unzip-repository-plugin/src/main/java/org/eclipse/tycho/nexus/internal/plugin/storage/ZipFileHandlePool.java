@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+
+/**
+ * Keeps open {@link ZipFile} handles of cached archives so that concurrent and subsequent
+ * downloads from the same archive share one handle instead of opening and parsing the archive
+ * again. Handles are reference counted: every {@link #borrow(File)} must be followed by exactly
+ * one {@link ZipFileHandle#release()}. Handles which are not in use are closed in least recently
+ * used order as soon as the pool holds more than the configured number of handles.
+ */
+public class ZipFileHandlePool {
+
+    private static final int DEFAULT_MAX_HANDLES = 64;
+
+    /**
+     * An open {@link ZipFile} shared between all readers of an archive.
+     */
+    public final class ZipFileHandle {
+
+        private final String key;
+        private final ZipFile zipFile;
+        private final long archiveLength;
+        private final long archiveLastModified;
+
+        // guarded by the pool
+        private int references;
+        private boolean retired;
+
+        ZipFileHandle(final String key, final ZipFile zipFile, final long archiveLength,
+                final long archiveLastModified) {
+            this.key = key;
+            this.zipFile = zipFile;
+            this.archiveLength = archiveLength;
+            this.archiveLastModified = archiveLastModified;
+        }
+
+        public ZipFile getZipFile() {
+            return zipFile;
+        }
+
+        /**
+         * Returns the handle to the pool. The handle must not be used anymore afterwards.
+         */
+        public void release() {
+            ZipFileHandlePool.this.release(this);
+        }
+
+        boolean isUpToDate(final long length, final long lastModified) {
+            return lastModified == archiveLastModified && length == archiveLength;
+        }
+    }
+
+    /**
+     * The retired handles of an archive which are still in use, and the actions to run once the
+     * last of them is released.
+     */
+    private static final class RetiredHandles {
+        int inUse;
+        final List<Runnable> releaseActions = new ArrayList<Runnable>(1);
+    }
+
+    private final Map<String, ZipFileHandle> handles = new LinkedHashMap<String, ZipFileHandle>(16, 0.75f, true);
+    // guarded by handles
+    private final Map<String, RetiredHandles> retiredHandles = new HashMap<String, RetiredHandles>();
+    private final int maxHandles;
+    private final Logger logger;
+
+    public ZipFileHandlePool(final Logger logger) {
+        this(DEFAULT_MAX_HANDLES, logger);
+    }
+
+    public ZipFileHandlePool(final int maxHandles, final Logger logger) {
+        this.maxHandles = maxHandles;
+        this.logger = logger;
+    }
+
+    /**
+     * Returns an open handle of the given archive. An already open handle is shared unless the
+     * archive was modified since it was opened.
+     *
+     * @param archive
+     *            the archive file
+     * @return the handle, which has to be released after use
+     * @throws IOException
+     *             if the archive cannot be opened
+     */
+    public ZipFileHandle borrow(final File archive) throws IOException {
+        return borrow(archive, archive.length(), archive.lastModified());
+    }
+
+    /**
+     * Returns an open handle of the given archive like {@link #borrow(File)}, for an archive of
+     * which the current size and modification time are already known, so that the archive file is
+     * not accessed if a handle is open.
+     *
+     * @param archive
+     *            the archive file
+     * @param length
+     *            the current size of the archive file
+     * @param lastModified
+     *            the current modification time of the archive file
+     * @return the handle, which has to be released after use
+     * @throws IOException
+     *             if the archive cannot be opened
+     */
+    public ZipFileHandle borrow(final File archive, final long length, final long lastModified) throws IOException {
+        final String key = archive.getAbsolutePath();
+        synchronized (handles) {
+            final ZipFileHandle handle = handles.get(key);
+            if (handle != null) {
+                if (handle.isUpToDate(length, lastModified)) {
+                    handle.references++;
+                    return handle;
+                }
+                retire(handles.remove(key));
+            }
+        }
+
+        // open outside of the lock, opening a zip file reads its whole central directory
+        final ZipFileHandle newHandle = new ZipFileHandle(key, new ZipFile(archive), length, lastModified);
+        synchronized (handles) {
+            final ZipFileHandle handle = handles.get(key);
+            if (handle != null && handle.isUpToDate(length, lastModified)) {
+                // another thread was faster
+                handle.references++;
+                close(newHandle);
+                return handle;
+            }
+            if (handle != null) {
+                retire(handles.remove(key));
+            }
+            newHandle.references = 1;
+            handles.put(key, newHandle);
+            closeIdleHandles();
+            return newHandle;
+        }
+    }
+
+    /**
+     * Removes the handle of the given archive from the pool, e.g. because the archive is deleted.
+     * A handle which is still in use is closed as soon as it is released.
+     *
+     * @param archive
+     *            the archive file
+     */
+    public void invalidate(final File archive) {
+        invalidate(archive, null);
+    }
+
+    /**
+     * Removes the handle of the given archive from the pool like {@link #invalidate(File)}. If any
+     * handle of the archive is still in use, including handles retired before, the given action is
+     * run by the last reader once it releases the last of these handles, e.g. to delete the archive
+     * only when it is not read anymore.
+     *
+     * @param archive
+     *            the archive file
+     * @param releaseAction
+     *            the action to run after the last release of a handle still in use
+     * @return <code>true</code> if the archive is not in use, in which case the action is not run
+     */
+    public boolean invalidate(final File archive, final Runnable releaseAction) {
+        final String key = archive.getAbsolutePath();
+        synchronized (handles) {
+            final ZipFileHandle handle = handles.remove(key);
+            if (handle != null) {
+                retire(handle);
+            }
+            final RetiredHandles retired = retiredHandles.get(key);
+            if (retired == null) {
+                return true;
+            }
+            if (releaseAction != null) {
+                retired.releaseActions.add(releaseAction);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the given archive is currently read through a handle of this pool.
+     *
+     * @param archive
+     *            the archive file
+     * @return <code>true</code> if a borrowed handle of the archive was not released yet
+     */
+    public boolean isInUse(final File archive) {
+        synchronized (handles) {
+            final String key = archive.getAbsolutePath();
+            final ZipFileHandle handle = handles.get(key);
+            return handle != null && handle.references > 0 || retiredHandles.containsKey(key);
+        }
+    }
+
+    /**
+     * @return the number of handles currently held by the pool, whether in use or not
+     */
+    public int size() {
+        synchronized (handles) {
+            return handles.size();
+        }
+    }
+
+    private void release(final ZipFileHandle handle) {
+        final RetiredHandles retired;
+        synchronized (handles) {
+            if (handle.references <= 0) {
+                throw new IllegalStateException("Handle of " + handle.key + " released more often than borrowed");
+            }
+            handle.references--;
+            if (handle.references > 0) {
+                return;
+            }
+            if (!handle.retired) {
+                closeIdleHandles();
+                return;
+            }
+            close(handle);
+            retired = retiredHandles.get(handle.key);
+            if (--retired.inUse > 0) {
+                // another retired handle of the archive is still read
+                return;
+            }
+            retiredHandles.remove(handle.key);
+        }
+        // outside of the lock, as the actions may wait for other locks
+        for (final Runnable releaseAction : retired.releaseActions) {
+            releaseAction.run();
+        }
+    }
+
+    // must be called with the lock held
+    private void retire(final ZipFileHandle handle) {
+        handle.retired = true;
+        if (handle.references == 0) {
+            close(handle);
+            return;
+        }
+        RetiredHandles retired = retiredHandles.get(handle.key);
+        if (retired == null) {
+            retired = new RetiredHandles();
+            retiredHandles.put(handle.key, retired);
+        }
+        retired.inUse++;
+    }
+
+    // must be called with the lock held
+    private void closeIdleHandles() {
+        final Iterator<ZipFileHandle> iterator = handles.values().iterator();
+        while (handles.size() > maxHandles && iterator.hasNext()) {
+            final ZipFileHandle handle = iterator.next();
+            if (handle.references == 0) {
+                iterator.remove();
+                close(handle);
+            }
+        }
+    }
+
+    private void close(final ZipFileHandle handle) {
+        try {
+            handle.zipFile.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to close zip file " + handle.key, e);
+        }
+    }
+}
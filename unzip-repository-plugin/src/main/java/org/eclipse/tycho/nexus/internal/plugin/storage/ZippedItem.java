@@ -10,16 +10,17 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.storage;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.LinkedList;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.cache.ResolutionContext;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipFileHandlePool.ZipFileHandle;
 import org.slf4j.Logger;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
@@ -37,27 +38,58 @@ import org.sonatype.nexus.util.WrappingInputStream;
 public class ZippedItem {
 
     /**
-     * Simple utility class used to close a dedicated ZipFile on closing a provided InputStream.
+     * Simple utility class used to release a shared ZipFile handle on closing a provided
+     * InputStream.
      */
     private class ZipClosingEntryStream extends WrappingInputStream {
 
-        private final ZipFile zipFile;
+        private final ZipFileHandle zipFileHandle;
+        private boolean closed;
 
-        public ZipClosingEntryStream(final InputStream inputStream, final ZipFile zipFile) {
+        public ZipClosingEntryStream(final InputStream inputStream, final ZipFileHandle zipFileHandle) {
             super(inputStream);
-            this.zipFile = zipFile;
+            this.zipFileHandle = zipFileHandle;
         }
 
         @Override
         public void close() throws IOException {
-            super.close();
-            zipFile.close();
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                zipFileHandle.release();
+            }
+        }
+
+    }
+
+    /**
+     * Stream of the raw data of an entry which closes its private channel of the archive on close.
+     */
+    private static class ChannelClosingRegionStream extends FileRegionInputStream {
+
+        private final FileChannel channel;
+
+        public ChannelClosingRegionStream(final FileChannel channel, final long position, final long length) {
+            super(channel, position, length);
+            this.channel = channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
         }
 
     }
 
     private final DefaultUnzipRepository repository;
     private StorageItem zippedStorageItem;
+    private ZipArchiveEntry zipEntry;
+    // whether the DEFLATED zipEntry is served as gzip stream under a virtual path
+    private boolean gzipped;
     private final String pathInZip;
     private final String zipItemPath;
     private final long lastModified;
@@ -126,10 +158,9 @@ public class ZippedItem {
      *            the parent ZippedItem
      * @param entry
      *            the zip entry representing the zipped file in the zip file
-     * @throws ItemNotFoundException
      */
-    public static ZippedItem newZippedChildItem(final ZippedItem parentItem, final ZipEntry entry, final Logger logger)
-            throws ItemNotFoundException {
+    public static ZippedItem newZippedChildItem(final ZippedItem parentItem, final ZipArchiveEntry entry,
+            final Logger logger) {
         ResourceStoreRequest requestForChild = createRequestForChild(parentItem.getRequest().getRequestContext(),
                 parentItem.zipItemPath, entry.getName());
 
@@ -206,6 +237,14 @@ public class ZippedItem {
         return request;
     }
 
+    /**
+     * Returns the context in which the archive of this zipped item is resolved, which is shared
+     * with the request of the parent item, if any.
+     */
+    private ResolutionContext getResolutionContext() {
+        return ResolutionContext.get(request.getRequestContext(), repository);
+    }
+
     /**
      * Returns the repository in which this zipped item is stored (the shadow repository).
      * 
@@ -227,10 +266,14 @@ public class ZippedItem {
         if (isDirectory()) {
             return null;
         }
+        if (gzipped) {
+            return GzipEntryStream.MIME_TYPE;
+        }
         return MimeTypeHelper.guessMimeType(pathInZip);
     }
 
-    private void initZippedStorageItem(final ZipEntry entry) {
+    private void initZippedStorageItem(final ZipArchiveEntry entry) {
+        zipEntry = entry;
         if (entry.isDirectory()) {
             zippedStorageItem = new ZippedStorageCollectionItem(this);
         } else {
@@ -257,32 +300,25 @@ public class ZippedItem {
             zippedStorageItem = new ZippedStorageCollectionItem(this);
             return;
         }
-        ZipFile zipFile = null;
+        final ZipArchiveIndex index;
         try {
-            final File file = repository.getCache().getArchive(zipItemPath);
-            zipFile = new ZipFile(file);
-
-            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-
-            while (entries.hasMoreElements()) {
-                final ZipEntry entry = entries.nextElement();
-                final String entryName = removeTrailingSlash(entry.getName());
-                if (pathInZip.equals(entryName)) {
-                    initZippedStorageItem(entry);
-                    return;
-                }
-            }
+            index = repository.getCache().getArchiveIndex(zipItemPath, getResolutionContext());
         } catch (final ItemNotFoundException e) {
             throw new LocalStorageException(e);
-        } catch (final IOException e) {
-            throw new LocalStorageException(e);
-        } finally {
-            if (zipFile != null) {
-                try {
-                    zipFile.close();
-                } catch (final IOException e) {
-                    logger.warn("Unable to close ZipFile " + zipFile.getName(), e);
-                }
+        }
+        final ZipArchiveEntry entry = index.getEntry(pathInZip);
+        if (entry != null) {
+            initZippedStorageItem(entry);
+            return;
+        }
+        if (repository.isServePrecompressedEntries() && pathInZip.endsWith(GzipEntryStream.EXTENSION)) {
+            final ZipArchiveEntry compressedEntry = index.getEntry(pathInZip.substring(0, pathInZip.length()
+                    - GzipEntryStream.EXTENSION.length()));
+            if (compressedEntry != null && GzipEntryStream.canWrap(compressedEntry)) {
+                zipEntry = compressedEntry;
+                gzipped = true;
+                zippedStorageItem = new ZippedStorageFileItem(this, GzipEntryStream.getLength(compressedEntry));
+                return;
             }
         }
 
@@ -300,21 +336,6 @@ public class ZippedItem {
         return zippedStorageItem;
     }
 
-    private boolean isDirectMember(String otherPathInZip) {
-        if (otherPathInZip.endsWith("/")) {
-            // cut of trailing slash
-            otherPathInZip = otherPathInZip.substring(0, otherPathInZip.length() - 1);
-        }
-        if (pathInZip.length() == 0) {
-            // this ZippedItem represents the zip file itself
-            return !otherPathInZip.contains("/");
-        } else {
-            // this ZippedItem represents a folder within a zip file
-            return otherPathInZip.startsWith(pathInZip.toString() + "/") &&
-            /* limit to direct members: */otherPathInZip.indexOf("/", (pathInZip.toString() + "/").length()) == -1;
-        }
-    }
-
     /**
      * Checks whether this zipped item represents a directory.
      * 
@@ -338,42 +359,11 @@ public class ZippedItem {
             throw new LocalStorageException("members cannot be listed for a file");
         }
 
-        final List<StorageItem> members = new LinkedList<StorageItem>();
-
-        final File file = repository.getCache().getArchive(zipItemPath);
-        if (file.isDirectory()) {
-            throw new LocalStorageException("ZipFile cannot work on directory.");
-        }
-
-        ZipFile zipFile = null;
-        try {
-            zipFile = new ZipFile(file);
-            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-
-            while (entries.hasMoreElements()) {
-                final ZipEntry entry = entries.nextElement();
-                if (isDirectMember(entry.getName())) {
-                    StorageItem zipEntryItem;
-                    final ZippedItem zippedItem = newZippedChildItem(this, entry, logger);
-                    if (entry.isDirectory()) {
-                        zipEntryItem = new ZippedStorageCollectionItem(zippedItem);
-                    } else {
-                        zipEntryItem = new ZippedStorageFileItem(zippedItem, entry.getSize());
-                    }
-                    members.add(zipEntryItem);
-                }
-            }
-        } catch (final IOException e) {
-            throw new LocalStorageException(e);
-        } finally {
-            if (zipFile != null) {
-                try {
-                    zipFile.close();
-                } catch (final IOException e) {
-                    logger.warn("Unable to close ZipFile " + zipFile.getName(), e);
-                }
-            }
+        final List<StorageItem> members = new ArrayList<StorageItem>();
 
+        final ZipArchiveIndex index = repository.getCache().getArchiveIndex(zipItemPath, getResolutionContext());
+        for (final ZipArchiveEntry entry : index.getChildren(pathInZip)) {
+            members.add(newZippedChildItem(this, entry, logger).getZippedStorageItem());
         }
 
         return members.toArray(new StorageItem[members.size()]);
@@ -382,31 +372,67 @@ public class ZippedItem {
     InputStream getStreamOfZippedFile() throws IOException {
 
         try {
-            final File file = repository.getCache().getArchive(zipItemPath);
-            ZipFile zipFile;
-
-            zipFile = new ZipFile(file);
-
-            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            final InputStream inputStream = zipFile.getInputStream(getEntry(entries));
-            final ZipClosingEntryStream zipClosingEntryStream = new ZipClosingEntryStream(inputStream, zipFile);
-            return zipClosingEntryStream;
+            if (gzipped || zipEntry.getMethod() == ZipEntry.STORED) {
+                return getStreamOfRawData();
+            }
+            final InflatedEntrySpool spool;
+            if (repository.isSpoolInflatedEntries() && InflatedEntrySpool.isWorthSpooling(zipEntry)) {
+                spool = new InflatedEntrySpool(repository.getCache().getCacheLocation(zipItemPath), zipEntry,
+                        repository.getCache().getSidecarListener(zipItemPath));
+                if (spool.isAvailable()) {
+                    // the archive itself is not needed
+                    return spool.open();
+                }
+            } else {
+                spool = null;
+            }
+            final ZipFileHandle zipFileHandle = repository.getCache().borrowZipFile(zipItemPath,
+                    getResolutionContext());
+            try {
+                final ZipFile zipFile = zipFileHandle.getZipFile();
+                // the entry is already known from the index, so ZipFile can look it up by name directly
+                final ZipEntry entry = zipFile.getEntry(zipEntry.getName());
+                if (entry == null) {
+                    throw new IOException("Entry " + pathInZip + " no longer exists in " + zipItemPath);
+                }
+                final InputStream inputStream = new ZipClosingEntryStream(zipFile.getInputStream(entry),
+                        zipFileHandle);
+                // the first complete read makes the entry seekable for later (range) requests
+                return spool != null ? spool.spool(inputStream) : inputStream;
+            } catch (final IOException e) {
+                zipFileHandle.release();
+                throw e;
+            } catch (final RuntimeException e) {
+                zipFileHandle.release();
+                throw e;
+            }
         } catch (final ItemNotFoundException e) {
             throw new IOException(e.getMessage(), e);
         }
     }
 
-    private ZipEntry getEntry(final Enumeration<? extends ZipEntry> entries) {
-
-        while (entries.hasMoreElements()) {
-            final ZipEntry entry = entries.nextElement();
-            final String entryName = removeTrailingSlash(entry.getName());
-            if (pathInZip.equals(entryName)) {
-                return entry;
+    /**
+     * Returns the raw data of the entry read directly from the archive file, i.e. the uncompressed
+     * data of a STORED entry or the compressed data of a gzipped entry. No ZipFile is needed for
+     * this, only a plain channel of the archive.
+     */
+    private InputStream getStreamOfRawData() throws IOException, ItemNotFoundException {
+        final FileChannel channel = repository.getCache().openChannel(zipItemPath, getResolutionContext());
+        try {
+            final long dataOffset = zipEntry.getDataOffset(channel);
+            if (gzipped) {
+                // the compressed data is passed through as it is
+                return GzipEntryStream.wrap(zipEntry, new ChannelClosingRegionStream(channel, dataOffset,
+                        zipEntry.getCompressedSize()));
             }
+            return new ChannelClosingRegionStream(channel, dataOffset, zipEntry.getSize());
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        } catch (final RuntimeException e) {
+            channel.close();
+            throw e;
         }
-
-        return null;
     }
 
     public long getLastModified() {
@@ -42,7 +42,8 @@ public final class ZippedStorageFileItem extends DefaultStorageFileItem {
 
         @Override
         public boolean isReusable() {
-            return false;
+            // every call of getContent() opens a new stream
+            return true;
         }
 
         @Override
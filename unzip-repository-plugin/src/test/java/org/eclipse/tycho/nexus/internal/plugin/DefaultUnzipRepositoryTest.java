@@ -176,6 +176,22 @@ public abstract class DefaultUnzipRepositoryTest extends UnzipPluginTestSupport
         TestUtil.assertContent("some more content", fileItem);
     }
 
+    @Test
+    public void testRetrieveFileInLatestVersionWithinRange() throws Exception {
+        final DefaultUnzipRepository snapshotUnzipRepo = createUnzipRepo(createSnapshotRepo());
+        snapshotUnzipRepo.setVersionRefreshInterval(60);
+        final String filePath = "/ga/SNAPSHOT[0.9,2.0)/archive-SNAPSHOT.zip" + Util.UNZIP_TYPE_EXTENSION + "/test.txt";
+        final StorageItem item = snapshotUnzipRepo.doRetrieveItem(new ResourceStoreRequest(filePath));
+        TestUtil.assertContent("some content", (DefaultStorageFileItem) item);
+        try {
+            // not resolved with the result of the other range
+            snapshotUnzipRepo.doRetrieveItem(new ResourceStoreRequest(filePath.replace("[0.9,2.0)", "[2.0,3.0)")));
+            Assert.fail();
+        } catch (final ItemNotFoundException e) {
+            // expected
+        }
+    }
+
     @Test(expected = ItemNotFoundException.class)
     public void testRetrieveNonExistingItemInArchive() throws LocalStorageException, IllegalOperationException,
             ItemNotFoundException {
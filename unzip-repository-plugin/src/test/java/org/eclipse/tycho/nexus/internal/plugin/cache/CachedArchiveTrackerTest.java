@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class CachedArchiveTrackerTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final CachedArchiveTracker tracker = new CachedArchiveTracker();
+
+    @Test
+    public void testLeastRecentlyUsedEvictedFirst() {
+        tracker.accessed("/a.zip", 10);
+        tracker.accessed("/b.zip", 10);
+        tracker.accessed("/c.zip", 10);
+        tracker.accessed("/a.zip", 10);
+
+        Assert.assertEquals(30, tracker.getTotalSize());
+        Assert.assertEquals(Arrays.asList("/b.zip", "/c.zip"), getPaths(tracker.getEvictionCandidates(10, null)));
+        Assert.assertEquals(Arrays.asList("/b.zip"), getPaths(tracker.getEvictionCandidates(20, null)));
+        Assert.assertEquals(Arrays.asList("/c.zip", "/a.zip"), getPaths(tracker.getEvictionCandidates(10, "/b.zip")));
+        Assert.assertTrue(tracker.getEvictionCandidates(30, null).isEmpty());
+    }
+
+    @Test
+    public void testAccessedCandidateChanged() {
+        tracker.accessed("/a.zip", 10);
+        tracker.accessed("/b.zip", 10);
+        final CachedArchiveTracker.Candidate candidate = tracker.getEvictionCandidates(10, null).get(0);
+        Assert.assertTrue(tracker.isUnchanged(candidate));
+
+        tracker.accessed("/a.zip", 10);
+        Assert.assertFalse(tracker.isUnchanged(candidate));
+    }
+
+    @Test
+    public void testWrittenSidecarsCounted() {
+        tracker.accessed("/a.zip", 10);
+        tracker.grown("/a.zip", 5);
+        Assert.assertEquals(15, tracker.getTotalSize());
+
+        tracker.removed("/a.zip");
+        Assert.assertEquals(0, tracker.getTotalSize());
+        // written by a reader of the deleted archive
+        tracker.grown("/a.zip", 5);
+        Assert.assertEquals(0, tracker.getTotalSize());
+    }
+
+    @Test
+    public void testFilesFoundInStorageUsedLeastRecently() throws IOException {
+        final File base = tempFolder.getRoot();
+        createFile(base, "dir/older.zip", 20000);
+        createFile(base, "dir/newer.zip", 10000);
+        createFile(base, "dir/newer.zip.inflated/entry", 10000);
+        createFile(base, ".nexus/attributes/dir/newer.zip", 10000);
+        tracker.accessed("/accessed.zip", 10);
+        // the scan does not undo an access which happened before it was done
+        tracker.accessed("/dir/older.zip", 10);
+
+        tracker.initialize(base);
+
+        Assert.assertEquals(Arrays.asList("/dir/newer.zip", "/accessed.zip", "/dir/older.zip"),
+                getPaths(tracker.getEvictionCandidates(0, null)));
+        // the spooled entry is counted with its archive
+        Assert.assertEquals(10 + 20 + 10, tracker.getTotalSize());
+    }
+
+    private static File createFile(final File base, final String path, final long age) throws IOException {
+        final File file = new File(base, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[10]);
+        Assert.assertTrue(file.setLastModified(System.currentTimeMillis() - age));
+        return file;
+    }
+
+    private static List<String> getPaths(final List<CachedArchiveTracker.Candidate> candidates) {
+        final List<String> paths = new ArrayList<String>();
+        for (final CachedArchiveTracker.Candidate candidate : candidates) {
+            paths.add(candidate.getPath());
+        }
+        return paths;
+    }
+}
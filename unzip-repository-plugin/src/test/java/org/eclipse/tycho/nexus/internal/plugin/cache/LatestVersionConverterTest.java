@@ -22,7 +22,6 @@ import junit.framework.AssertionFailedError;
 import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.sonatype.nexus.proxy.IllegalRequestException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
@@ -63,49 +62,52 @@ public class LatestVersionConverterTest {
     }
 
     @Test(expected = IllegalRequestException.class)
-    @Ignore
     public void testInvalidRange() throws Exception {
-        // TODO 
-        // requires specification how version ranges are defined in url.
+        assertPathIsConvertedWithinRange(
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip", "",
+            "[2.0.0,1.0.0)");
+    }
 
-//        assertPathIsConvertedWithinRange(
-//            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip", "",
-//            "[2.0.0,1.0.0)");       
+    @Test
+    public void testPlainVersionAfterKeywordNotConverted() throws Exception {
+        assertPathIsNotConvertedWithinRange(
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip",
+            "0.6.0");
     }
 
     @Test
-    @Ignore
     public void testConvertToLatestVersionWithinRange() throws Exception {
-        // TODO 
-        // requires specification how version ranges are defined in url.
-
-//        assertPathIsConvertedWithinRange(
-//            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip",
-//            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.1-SNAPSHOT/org.eclipse.tycho.example.target-0.6.1-20110718.111322-2.zip-unzip",
-//            "[0.5.0,0.7.0-SNAPSHOT)");
+        assertPathIsConvertedWithinRange(
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip",
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.1-SNAPSHOT/org.eclipse.tycho.example.target-0.6.1-20110718.111322-2.zip-unzip",
+            "[0.5.0,0.7.0-SNAPSHOT)");
     }
 
     @Test
-    @Ignore
     public void testNoLatestVersionWithinRange() throws Exception {
-        // TODO 
-        // requires specification how version ranges are defined in url.
-
-//        assertPathIsNotConvertedWithinRange(
-//            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip",
-//            "[1.0.0,2.0.0)");
+        assertPathIsNotConvertedWithinRange(
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/SNAPSHOT/org.eclipse.tycho.example.target-SNAPSHOT.zip-unzip",
+            "[1.0.0,2.0.0)");
     }
 
     @Test
-    @Ignore
     public void testConvertToLatestReleasedVersionWithinRange() throws Exception {
-        // TODO 
-        // requires specification how version ranges are defined in url.
+        assertPathIsConvertedWithinRange(
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/RELEASE/org.eclipse.tycho.example.target-RELEASE.zip-unzip",
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.0/org.eclipse.tycho.example.target-0.6.0.zip-unzip",
+            "[0.5.0,0.7.0)");
+    }
+
+    @Test
+    public void testConvertPathIntoArchiveWithinRange() throws Exception {
+        assertPathIsConvertedTo(
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/RELEASE(,0.5.0]/org.eclipse.tycho.example.target-RELEASE.zip-unzip/plugins/a.jar",
+            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.5.0/org.eclipse.tycho.example.target-0.5.0.zip-unzip/plugins/a.jar");
+    }
 
-//        assertPathIsConvertedWithinRange(
-//            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/RELEASE/org.eclipse.tycho.example.target-RELEASE.zip-unzip",
-//            "org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/0.6.0/org.eclipse.tycho.example.target-0.6.0.zip-unzip",
-//            "[0.5.0,0.7.0)");
+    @Test
+    public void testKeywordFolderWithOtherSuffixNotConverted() throws Exception {
+        assertPathIsNotConverted("org/eclipse/tycho/nexus/org.eclipse.tycho.example.target/RELEASE-1/org.eclipse.tycho.example.target-RELEASE.zip-unzip");
     }
 
     private void assertPathIsConvertedTo(final String requestPath, final String convertedPath) throws Exception {
@@ -116,6 +118,20 @@ public class LatestVersionConverterTest {
         assertPathConvertion(new ResourceStoreRequest(requestPath), requestPath, false);
     }
 
+    private void assertPathIsConvertedWithinRange(final String requestPath, final String convertedPath,
+            final String versionRange) throws Exception {
+        assertPathIsConvertedTo(appendRangeToKeywordFolder(requestPath, versionRange), convertedPath);
+    }
+
+    private void assertPathIsNotConvertedWithinRange(final String requestPath, final String versionRange)
+            throws Exception {
+        assertPathIsNotConverted(appendRangeToKeywordFolder(requestPath, versionRange));
+    }
+
+    private static String appendRangeToKeywordFolder(final String requestPath, final String versionRange) {
+        return requestPath.replaceFirst("/(SNAPSHOT|RELEASE)/", "/$1" + versionRange + "/");
+    }
+
     private void assertPathConvertion(final ResourceStoreRequest request, final String convertedPath,
             final boolean pathConversionExpected) throws Exception {
         final MavenRepository repositoryMock =
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStoreCreate;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+@SuppressWarnings("nls")
+public class MissingArchiveCacheTest extends UnzipPluginTestSupport {
+
+    private static final String MISSING_ARCHIVE_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT-missing.zip";
+
+    private RepositoryMock snapshotRepo;
+    private DefaultUnzipRepository snapshotUnzipRepo;
+
+    @Before
+    public void setupTestRepos() throws Exception {
+        snapshotRepo = createSnapshotRepo();
+        snapshotUnzipRepo = createUnzipRepo(snapshotRepo);
+        snapshotUnzipRepo.setNotFoundCacheActive(true);
+        snapshotUnzipRepo.setNotFoundCacheTimeToLive(10);
+    }
+
+    @Test
+    public void testMissingArchiveLookedUpOnce() throws Exception {
+        assertMissing();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        assertMissing();
+        assertMissing();
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testNotRememberedIfNotFoundCacheIsInactive() throws Exception {
+        snapshotUnzipRepo.setNotFoundCacheActive(false);
+        assertMissing();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        assertMissing();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testInvalidatedByItemEvent() throws Exception {
+        final StorageItem metadataItem = snapshotRepo.retrieveItem(new ResourceStoreRequest(
+                "/ga/1.0.0-SNAPSHOT/maven-metadata.xml"));
+        final StorageItem folderItem = snapshotRepo.retrieveItem(new ResourceStoreRequest("/ga"));
+        assertMissing();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+
+        snapshotUnzipRepo.onMetadataItemEvent(new RepositoryItemEventStoreCreate(snapshotRepo, metadataItem));
+        assertMissing();
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+
+        snapshotUnzipRepo.onMetadataItemEvent(new RepositoryItemEventStoreCreate(snapshotRepo, folderItem));
+        assertMissing();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testInvalidatedByArchiveChange() throws Exception {
+        final MissingArchiveCache cache = new MissingArchiveCache(snapshotUnzipRepo);
+        cache.add(MISSING_ARCHIVE_PATH, cache.startLookup(MISSING_ARCHIVE_PATH));
+        cache.endLookup(MISSING_ARCHIVE_PATH);
+        cache.invalidate("/ga/1.0.0-SNAPSHOT/other.zip", false);
+        assertTrue(cache.isMissing(MISSING_ARCHIVE_PATH));
+        cache.invalidate(MISSING_ARCHIVE_PATH, false);
+        assertFalse(cache.isMissing(MISSING_ARCHIVE_PATH));
+    }
+
+    @Test
+    public void testNotRememberedIfInvalidatedDuringLookup() throws Exception {
+        final MissingArchiveCache cache = new MissingArchiveCache(snapshotUnzipRepo);
+        final long readToken = cache.startLookup(MISSING_ARCHIVE_PATH);
+        cache.invalidate("/ga", true);
+        cache.add(MISSING_ARCHIVE_PATH, readToken);
+        cache.endLookup(MISSING_ARCHIVE_PATH);
+        assertFalse(cache.isMissing(MISSING_ARCHIVE_PATH));
+
+        final long otherReadToken = cache.startLookup(MISSING_ARCHIVE_PATH);
+        cache.invalidate(MISSING_ARCHIVE_PATH, false);
+        cache.add(MISSING_ARCHIVE_PATH, otherReadToken);
+        cache.endLookup(MISSING_ARCHIVE_PATH);
+        assertFalse(cache.isMissing(MISSING_ARCHIVE_PATH));
+    }
+
+    @Test
+    public void testRememberedIfOtherItemsInvalidatedDuringLookup() throws Exception {
+        final MissingArchiveCache cache = new MissingArchiveCache(snapshotUnzipRepo);
+        final long readToken = cache.startLookup(MISSING_ARCHIVE_PATH);
+        cache.invalidate("/ga/1.0.0-SNAPSHOT/other.zip", false);
+        cache.invalidate("/ga/1.0.0-SNAPSHOT/maven-metadata.xml", false);
+        cache.invalidate("/ga/1.1.0-SNAPSHOT", true);
+        cache.invalidate("/other", true);
+        cache.add(MISSING_ARCHIVE_PATH, readToken);
+        cache.endLookup(MISSING_ARCHIVE_PATH);
+        assertTrue(cache.isMissing(MISSING_ARCHIVE_PATH));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPathDropped() throws Exception {
+        final MissingArchiveCache cache = new MissingArchiveCache(snapshotUnzipRepo, 2);
+        cache.add("/a.zip", cache.startLookup("/a.zip"));
+        cache.add("/b.zip", cache.startLookup("/b.zip"));
+        assertTrue(cache.isMissing("/a.zip"));
+        cache.add("/c.zip", cache.startLookup("/c.zip"));
+        assertTrue(cache.isMissing("/a.zip"));
+        assertFalse(cache.isMissing("/b.zip"));
+        assertTrue(cache.isMissing("/c.zip"));
+    }
+
+    private void assertMissing() throws Exception {
+        try {
+            snapshotUnzipRepo.getCache().getArchive(MISSING_ARCHIVE_PATH);
+            fail("ItemNotFoundException expected");
+        } catch (final ItemNotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2012 SAP AG and others.
+ * Copyright (c) 2010, 2014 SAP AG and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.PathLockMonitor;
 import org.junit.Assert;
@@ -31,7 +32,8 @@ public class PathLockTest {
 
     public static void buildStrings(final String path) {
         final PathLockMonitor lock = PathLock.getLock(path);
-        synchronized (lock) {
+        lock.lockExclusive();
+        try {
             if (path.equals("a")) {
                 aString += "a";
                 cString += "y";
@@ -45,6 +47,8 @@ public class PathLockTest {
                 cString += "z";
                 bString += "d";
             }
+        } finally {
+            lock.unlockExclusive();
         }
         Assert.assertTrue(PathLock.releaseLock(lock));
     }
@@ -76,6 +80,51 @@ public class PathLockTest {
         executor.shutdown();
     }
 
+    @Test
+    public void testSharedLockHeldConcurrently() throws Exception {
+        final PathLockMonitor lock = PathLock.getLock("shared");
+        lock.lockShared();
+        try {
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                final Future<Boolean> otherReader = executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        final PathLockMonitor sameLock = PathLock.getLock("shared");
+                        sameLock.lockShared();
+                        sameLock.unlockShared();
+                        return PathLock.releaseLock(sameLock);
+                    }
+                });
+                // would time out if readers excluded each other
+                Assert.assertTrue(otherReader.get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            lock.unlockShared();
+            Assert.assertTrue(PathLock.releaseLock(lock));
+        }
+    }
+
+    @Test
+    public void testLocksUnregisteredWhenReleased() {
+        final int registered = PathLock.getRegisteredLockCount();
+        final PathLockMonitor lock = PathLock.getLock("released");
+        Assert.assertSame(lock, PathLock.getLock("released"));
+        Assert.assertEquals(registered + 1, PathLock.getRegisteredLockCount());
+
+        Assert.assertTrue(PathLock.releaseLock(lock));
+        Assert.assertEquals(registered + 1, PathLock.getRegisteredLockCount());
+        Assert.assertTrue(PathLock.releaseLock(lock));
+        Assert.assertEquals(registered, PathLock.getRegisteredLockCount());
+        Assert.assertFalse(PathLock.releaseLock(lock));
+
+        final PathLockMonitor newLock = PathLock.getLock("released");
+        Assert.assertNotSame(lock, newLock);
+        Assert.assertTrue(PathLock.releaseLock(newLock));
+    }
+
     class CallableWorker implements Callable<Void> {
 
         private final CountDownLatch startSignal;
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+
+@SuppressWarnings("nls")
+public class ResolutionContextTest extends UnzipPluginTestSupport {
+
+    private static final String SNAPSHOT_REQUEST_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip";
+    private static final String ARCHIVE_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip";
+
+    @Test
+    public void testSharedWithChildRequests() throws Exception {
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(createSnapshotRepo());
+        final RequestContext requestContext = new RequestContext();
+        final ResolutionContext context = ResolutionContext.get(requestContext, unzipRepo);
+        assertSame(context, ResolutionContext.get(requestContext, unzipRepo));
+
+        final RequestContext childContext = new RequestContext();
+        childContext.setParentContext(requestContext);
+        assertSame(context, ResolutionContext.get(childContext, unzipRepo));
+
+        assertNotSame(context, ResolutionContext.get(new RequestContext(), unzipRepo));
+    }
+
+    @Test
+    public void testNotSharedBetweenRepositoriesServingSameRequest() throws Exception {
+        final RepositoryMock snapshotRepo = createSnapshotRepo();
+        final RepositoryMock masterRepo = createMasterRepo();
+        final DefaultUnzipRepository snapshotUnzipRepo = createUnzipRepo(snapshotRepo);
+        final DefaultUnzipRepository masterUnzipRepo = createUnzipRepo(masterRepo);
+        // a group repository passes its request on to all members
+        final ResourceStoreRequest request = new ResourceStoreRequest(SNAPSHOT_REQUEST_PATH);
+
+        assertTrue(RequestPathConverter.convert(snapshotRepo, request, true, null,
+                ResolutionContext.get(request.getRequestContext(), snapshotUnzipRepo)).isPathConverted());
+        assertFalse(RequestPathConverter.convert(masterRepo, request, true, null,
+                ResolutionContext.get(request.getRequestContext(), masterUnzipRepo)).isPathConverted());
+    }
+
+    @Test
+    public void testPathConvertedOncePerRequest() throws Exception {
+        final RepositoryMock snapshotRepo = createSnapshotRepo();
+        final ResourceStoreRequest request = new ResourceStoreRequest(SNAPSHOT_REQUEST_PATH);
+        final ResolutionContext context = ResolutionContext.get(request.getRequestContext(),
+                createUnzipRepo(snapshotRepo));
+
+        final ConversionResult conversionResult = RequestPathConverter.convert(snapshotRepo, request, true, null,
+                context);
+        assertTrue(conversionResult.isPathConverted());
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        assertSame(conversionResult, RequestPathConverter.convert(snapshotRepo, request, true, null, context));
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testArchiveResolvedOncePerRequest() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(masterRepo);
+        unzipRepo.setReadHostedArchivesInPlace(true);
+        final UnzipCache cache = unzipRepo.getCache();
+        final ResolutionContext context = ResolutionContext.get(new RequestContext(), unzipRepo);
+        final File archive = new File("./src/test/resources/snapshotRepo" + ARCHIVE_PATH);
+        final long lastModified = archive.lastModified();
+
+        cache.getLastModified(ARCHIVE_PATH, context);
+        final int retrieveCount = masterRepo.getRetrieveItemCount();
+        // would be resolved again in the master repository outside of the request
+        assertTrue(archive.setLastModified(lastModified - 10000));
+        try {
+            assertEquals(lastModified, cache.getLastModified(ARCHIVE_PATH, context));
+            assertSame(cache.getArchiveIndex(ARCHIVE_PATH, context), cache.getArchiveIndex(ARCHIVE_PATH, context));
+            assertEquals(retrieveCount, masterRepo.getRetrieveItemCount());
+        } finally {
+            archive.setLastModified(lastModified);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class SnapshotBuildTest {
+
+    private static final String PATH_UP_TO_VERSION = "/g/a/0.7.1-SNAPSHOT/a-0.7.1";
+
+    @Test
+    public void testParse() {
+        Assert.assertEquals("20110718.111322-2",
+                SnapshotBuild.parse(PATH_UP_TO_VERSION + "-20110718.111322-2-assembly.zip", PATH_UP_TO_VERSION)
+                        .toString());
+        Assert.assertNull(SnapshotBuild.parse(PATH_UP_TO_VERSION + "-SNAPSHOT.zip", PATH_UP_TO_VERSION));
+        Assert.assertNull(SnapshotBuild.parse("/g/a/0.7.1-SNAPSHOT/maven-metadata.xml", PATH_UP_TO_VERSION));
+    }
+
+    @Test
+    public void testBuildOrder() {
+        final SnapshotBuild build = SnapshotBuild.parse(PATH_UP_TO_VERSION + "-20110718.111322-9.zip",
+                PATH_UP_TO_VERSION);
+        final SnapshotBuild laterBuild = SnapshotBuild.parse(PATH_UP_TO_VERSION + "-20110718.111322-10.zip",
+                PATH_UP_TO_VERSION);
+        final SnapshotBuild latestBuild = SnapshotBuild.parse(PATH_UP_TO_VERSION + "-20110719.080000-1.zip",
+                PATH_UP_TO_VERSION);
+        Assert.assertTrue(build.compareTo(laterBuild) < 0);
+        Assert.assertTrue(laterBuild.compareTo(latestBuild) < 0);
+        Assert.assertEquals(0, build.compareTo(build));
+    }
+
+    @Test
+    public void testRetainMostRecent() {
+        final List<String> paths = new ArrayList<String>(Arrays.asList(
+                PATH_UP_TO_VERSION + "-20110716.100000-1.zip", PATH_UP_TO_VERSION + "-20110717.100000-2.zip",
+                PATH_UP_TO_VERSION + "-20110717.100000-2-sources.zip", PATH_UP_TO_VERSION + "-20110718.100000-3.zip",
+                PATH_UP_TO_VERSION + "-unknown.zip"));
+
+        SnapshotBuild.retainMostRecent(paths, PATH_UP_TO_VERSION, 2);
+
+        Assert.assertEquals(Arrays.asList(PATH_UP_TO_VERSION + "-20110716.100000-1.zip", PATH_UP_TO_VERSION
+                + "-unknown.zip"), paths);
+    }
+
+    @Test
+    public void testRetainNothing() {
+        final List<String> paths = new ArrayList<String>(Arrays.asList(PATH_UP_TO_VERSION + "-20110716.100000-1.zip"));
+        SnapshotBuild.retainMostRecent(paths, PATH_UP_TO_VERSION, 0);
+        Assert.assertEquals(1, paths.size());
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class TokenizedPathTest {
+
+    // the patterns the request paths were classified with before
+    private static final Pattern SNAPSHOT_PATTERN = Pattern
+            .compile("^(.*/(?:\\d*\\.?)+(?:-\\w+)*-SNAPSHOT/)([^/]*-)SNAPSHOT[^/]");
+    private static final Pattern LATESTVERSION_PATTERN = Pattern.compile("/SNAPSHOT/([^/]*)-SNAPSHOT[^/]");
+    private static final Pattern RELEASE_PATTERN = Pattern.compile("/RELEASE/([^/]*)-RELEASE[^/]");
+
+    private static final String[] PATHS = { "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip",
+            "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip/dir/file.txt",
+            "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT-assembly.zip-unzip/",
+            "/ga/1.0.0-rc_1-x-SNAPSHOT/archive-1.0.0-rc_1-x-SNAPSHOT.zip",
+            "/ga/1.0.0-SNAPSHOT/1.0.0-SNAPSHOT/a-SNAPSHOT.zip",
+            "/ga/1.0.0-SNAPSHOT/archive-SNAPSHOT", "/ga/1.0.0-SNAPSHOT/archive-SNAPSHOT-SNAPSHOT",
+            "/ga/1.0.0-SNAPSHOT/archive-SNAPSHOT-SNAPSHOTx", "/ga/1.0.0-SNAPSHOT//archive-1.0.0-SNAPSHOT.zip",
+            "/ga/1.0.0--SNAPSHOT/archive-1.0.0-SNAPSHOT.zip", "/ga/1.0.0.x-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip",
+            "/ga/-SNAPSHOT/archive-SNAPSHOT.zip", "1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip",
+            "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip/SNAPSHOT/x-SNAPSHOT.y",
+            "/ga/SNAPSHOT/archive-SNAPSHOT.zip-unzip", "/ga/SNAPSHOT/archive-SNAPSHOT-SNAPSHOT.zip",
+            "/ga/SNAPSHOT/archive.zip/SNAPSHOT/archive-SNAPSHOT.zip", "/ga/SNAPSHOT/archive-SNAPSHOT",
+            "SNAPSHOT/archive-SNAPSHOT.zip", "/ga/SNAPSHOTS/archive-SNAPSHOT.zip",
+            "/ga/RELEASE/archive-RELEASE.zip-unzip/a", "/ga/RELEASE/archive-RELEASE-assembly.zip",
+            "/ga/RELEASE/archive-RELEASE", "/ga/RELEASE/SNAPSHOT/archive-SNAPSHOT.zip",
+            "/ga/SNAPSHOT/RELEASE/archive-RELEASE.zip", "/ga/1.0.0/archive-1.0.0.zip", "/", "", "/ga/" };
+
+    @Test
+    public void testClassificationLikePatterns() {
+        for (final String requestPath : PATHS) {
+            final TokenizedPath path = TokenizedPath.tokenize(requestPath);
+
+            final Matcher snapshotMatcher = SNAPSHOT_PATTERN.matcher(requestPath);
+            final int versionFolder = path.findSnapshotVersionFolder();
+            assertEquals(requestPath, snapshotMatcher.find(), versionFolder >= 0);
+            if (versionFolder >= 0) {
+                final int keyword = path.findKeywordInName(versionFolder + 1, TokenizedPath.SNAPSHOT);
+                assertEquals(requestPath, snapshotMatcher.end(1), path.getSegmentEnd(versionFolder) + 1);
+                assertEquals(requestPath, snapshotMatcher.end(2), keyword + 1);
+            }
+            assertKeywordFolder(path, LATESTVERSION_PATTERN, TokenizedPath.SNAPSHOT);
+            assertKeywordFolder(path, RELEASE_PATTERN, TokenizedPath.RELEASE);
+        }
+    }
+
+    private static void assertKeywordFolder(final TokenizedPath path, final Pattern pattern, final String keyword) {
+        final Matcher matcher = pattern.matcher(path.getPath());
+        final int folder = path.findKeywordFolder(keyword);
+        assertEquals(path.getPath(), matcher.find(), folder >= 0);
+        if (folder >= 0) {
+            assertEquals(path.getPath(), matcher.start(), path.getSegmentStart(folder) - 1);
+            assertEquals(path.getPath(), matcher.end(1), path.findKeywordInName(folder + 1, keyword));
+        }
+    }
+
+    @Test
+    public void testKeywordFolderWithVersionRange() {
+        final TokenizedPath path = TokenizedPath.tokenize("/ga/RELEASE[1.0,2.0)/archive-RELEASE.zip-unzip/a");
+        final int folder = path.findKeywordFolder(TokenizedPath.RELEASE);
+        assertEquals(2, folder);
+        assertEquals("[1.0,2.0)", path.getVersionRangeSpec(folder, TokenizedPath.RELEASE));
+        assertEquals(2, TokenizedPath.tokenize("/ga/SNAPSHOT(,2.0]/archive-SNAPSHOT.zip").findKeywordFolder(
+                TokenizedPath.SNAPSHOT));
+        assertEquals(-1, TokenizedPath.tokenize("/ga/RELEASE1.0/archive-RELEASE.zip").findKeywordFolder(
+                TokenizedPath.RELEASE));
+    }
+
+    @Test
+    public void testKeywordFolderWithoutVersionRange() {
+        final TokenizedPath path = TokenizedPath.tokenize("/ga/RELEASE/archive-RELEASE.zip-unzip/a");
+        assertNull(path.getVersionRangeSpec(path.findKeywordFolder(TokenizedPath.RELEASE), TokenizedPath.RELEASE));
+    }
+
+    @Test
+    public void testZipBoundary() {
+        final TokenizedPath path = TokenizedPath.tokenize("/ga/1.0.0/archive-1.0.0.zip-unzip/dir/file.txt");
+        assertTrue(path.isZipContent());
+        assertEquals("/ga/1.0.0/archive-1.0.0.zip", path.getZipItemPath());
+        assertEquals("dir/file.txt", path.getPathInZip());
+    }
+
+    @Test
+    public void testZipBoundaryOfArchiveItself() {
+        assertEquals("", TokenizedPath.tokenize("/ga/archive.zip-unzip").getPathInZip());
+        assertEquals("", TokenizedPath.tokenize("/ga/archive.zip-unzip/").getPathInZip());
+    }
+
+    @Test
+    public void testFirstZipBoundaryUsed() {
+        final TokenizedPath path = TokenizedPath.tokenize("/ga/outer.zip-unzip/inner.zip-unzip/file.txt");
+        assertEquals("/ga/outer.zip", path.getZipItemPath());
+        assertEquals("inner.zip-unzip/file.txt", path.getPathInZip());
+    }
+
+    @Test
+    public void testZipBoundaryInNonNormalizedPath() {
+        final TokenizedPath path = TokenizedPath.tokenize("ga//archive.zip-unzip//dir//file.txt/");
+        assertEquals("/ga/archive.zip", path.getZipItemPath());
+        assertEquals("dir//file.txt", path.getPathInZip());
+    }
+
+    @Test
+    public void testNoZipContent() {
+        final TokenizedPath path = TokenizedPath.tokenize("/ga/archive-unzip.zip/file.txt");
+        assertFalse(path.isZipContent());
+        assertNull(path.getZipItemPath());
+        assertNull(path.getPathInZip());
+    }
+
+    @Test
+    public void testManySegments() {
+        final StringBuilder requestPath = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            requestPath.append("/s").append(i);
+        }
+        requestPath.append("/archive.zip-unzip/file.txt");
+        final TokenizedPath path = TokenizedPath.tokenize(requestPath.toString());
+        assertEquals(43, path.getSegmentCount());
+        assertEquals("file.txt", path.getPathInZip());
+    }
+}
@@ -12,6 +12,7 @@ package org.eclipse.tycho.nexus.internal.plugin.cache;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -20,14 +21,28 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.cache.PathLock.PathLockMonitor;
+import org.eclipse.tycho.nexus.internal.plugin.storage.Util;
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipFileHandlePool.ZipFileHandle;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
 import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil;
 import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
 import org.sonatype.nexus.proxy.StorageException;
+import org.sonatype.nexus.proxy.attributes.AttributesHandler;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.StorageItem;
 
 @SuppressWarnings("deprecation")
 public class UnzipCacheTest extends UnzipPluginTestSupport {
@@ -42,6 +57,7 @@ public class UnzipCacheTest extends UnzipPluginTestSupport {
     private static final String PATH_TO_LATEST_OTHER_ZIP = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2-juhu.zip";
     private static final String PATH_TO_LATEST_ZIP = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip";
 
+    private DefaultUnzipRepository snapshotUnzipRepo;
     private UnzipCache snapshotRepoUnzipCache;
     private static File oldZip;
     private static File oldOtherzip;
@@ -49,7 +65,8 @@ public class UnzipCacheTest extends UnzipPluginTestSupport {
 
     @Before
     public void setupTestRepos() throws Exception {
-        snapshotRepoUnzipCache = createUnzipRepo(createSnapshotRepo()).getCache();
+        snapshotUnzipRepo = createUnzipRepo(createSnapshotRepo());
+        snapshotRepoUnzipCache = snapshotUnzipRepo.getCache();
 
         oldZip = snapshotRepoUnzipCache.getArchive(PATH_TO_OLD_ZIP);
         oldOtherzip = snapshotRepoUnzipCache.getArchive(PATH_TO_OLD_OTHER_ZIP);
@@ -81,6 +98,25 @@ public class UnzipCacheTest extends UnzipPluginTestSupport {
         assertTrue(latestOtherZip.exists());
     }
 
+    @Test
+    public void testCleanUpDeletesSpooledEntriesOfArchive() throws Exception {
+        final File spoolDirectory = new File(oldZip.getParentFile(), oldZip.getName() + ".inflated");
+        assertTrue(spoolDirectory.mkdir());
+        assertTrue(new File(spoolDirectory, "entry").createNewFile());
+        final File latestSpoolDirectory = new File(latestOtherZip.getParentFile(), latestOtherZip.getName()
+                + ".inflated");
+        assertTrue(latestSpoolDirectory.mkdir());
+
+        snapshotRepoUnzipCache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION));
+
+        assertFalse(oldZip.exists());
+        assertFalse(spoolDirectory.exists());
+        // the listed spool directory does not stop the clean-up of the other archives
+        assertFalse(oldOtherzip.exists());
+        assertTrue(latestSpoolDirectory.exists());
+    }
+
     @Test
     public void testCleanUpOldSnapshotsCurrentSnapshotAlreadyCached() throws StorageException, ItemNotFoundException {
 
@@ -106,6 +142,70 @@ public class UnzipCacheTest extends UnzipPluginTestSupport {
         assertTrue(latestOtherZip.exists());
     }
 
+    @Test
+    public void testScheduledCleanUpOldSnapshots() throws Exception {
+        final File latestZip = snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+        final ConversionResult conversionResult = new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION);
+
+        snapshotRepoUnzipCache.scheduleSnapshotCleanUp(conversionResult).get(10, TimeUnit.SECONDS);
+
+        assertFalse(oldZip.exists());
+        assertFalse(oldOtherzip.exists());
+        assertTrue(latestZip.exists());
+        assertTrue(latestOtherZip.exists());
+    }
+
+    @Test
+    public void testCleanUpScheduledOncePerLatestVersion() throws Exception {
+        final ConversionResult conversionResult = new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION);
+        snapshotRepoUnzipCache.scheduleSnapshotCleanUp(conversionResult).get(10, TimeUnit.SECONDS);
+        assertNull(snapshotRepoUnzipCache.scheduleSnapshotCleanUp(conversionResult));
+
+        // an artifact of the old version is requested explicitly and cached again
+        oldZip = snapshotRepoUnzipCache.getArchive(PATH_TO_OLD_ZIP);
+        assertNull(snapshotRepoUnzipCache.scheduleSnapshotCleanUp(conversionResult));
+        assertTrue(oldZip.exists());
+
+        final ConversionResult noSnapshotResult = new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_UP_TO_VERSION,
+                false);
+        snapshotRepoUnzipCache.scheduleSnapshotCleanUp(noSnapshotResult).get(10, TimeUnit.SECONDS);
+        assertFalse(oldZip.exists());
+    }
+
+    @Test
+    public void testCleanUpRetainsPreviousBuilds() throws Exception {
+        snapshotUnzipRepo.setSnapshotRetentionCount(1);
+        final File latestZip = snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+
+        snapshotRepoUnzipCache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION));
+
+        assertTrue(oldZip.exists());
+        assertTrue(oldOtherzip.exists());
+        assertTrue(latestZip.exists());
+        assertTrue(latestOtherZip.exists());
+    }
+
+    @Test
+    public void testScheduledCleanUpDelayedByRetentionPeriod() throws Exception {
+        snapshotUnzipRepo.setSnapshotRetentionPeriod(1);
+        final Future<?> cleanUp = snapshotRepoUnzipCache.scheduleSnapshotCleanUp(new ConversionResult(
+                SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP, LATEST_VERSION, PATH_UP_TO_VERSION));
+        assertTrue(oldZip.exists());
+
+        cleanUp.get(10, TimeUnit.SECONDS);
+        assertFalse(oldZip.exists());
+        assertFalse(oldOtherzip.exists());
+        assertTrue(latestOtherZip.exists());
+    }
+
+    @Test
+    public void testNoCleanUpScheduledNoConversion() {
+        assertNull(snapshotRepoUnzipCache.scheduleSnapshotCleanUp(new ConversionResult(SNAPSHOT_REQUEST_PATH)));
+    }
+
     @Test
     public void testNoCleanUpOldSnapshotsNoConversion() throws StorageException, ItemNotFoundException {
 
@@ -152,6 +252,461 @@ public class UnzipCacheTest extends UnzipPluginTestSupport {
 
     }
 
+    @Test
+    public void testEvictLeastRecentlyUsedArchives() throws Exception {
+        // files already in the cache are ordered by their modification time
+        assertTrue(oldZip.setLastModified(System.currentTimeMillis() - 30000));
+        assertTrue(oldOtherzip.setLastModified(System.currentTimeMillis() - 20000));
+        assertTrue(latestOtherZip.setLastModified(System.currentTimeMillis() - 10000));
+
+        // all test archives have the same size
+        snapshotUnzipRepo.setMaxCacheSize(2 * latestOtherZip.length());
+        snapshotRepoUnzipCache.initializeTracker().get();
+        final File latestZip = snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+
+        assertFalse(oldZip.exists());
+        assertFalse(oldOtherzip.exists());
+        assertTrue(latestOtherZip.exists());
+        assertTrue(latestZip.exists());
+    }
+
+    @Test
+    public void testEvictionCountsFilesNextToArchives() throws Exception {
+        final File tempFile = new File(oldZip.getParentFile(), ".archive.zip.1.tmp");
+        Files.write(tempFile.toPath(), new byte[(int) oldZip.length()]);
+        final File spoolDirectory = new File(latestOtherZip.getParentFile(), latestOtherZip.getName() + ".inflated");
+        assertTrue(spoolDirectory.mkdir());
+        Files.write(new File(spoolDirectory, "entry").toPath(), new byte[(int) latestOtherZip.length()]);
+        assertTrue(tempFile.setLastModified(System.currentTimeMillis() - 40000));
+        assertTrue(oldZip.setLastModified(System.currentTimeMillis() - 30000));
+        assertTrue(oldOtherzip.setLastModified(System.currentTimeMillis() - 20000));
+        assertTrue(latestOtherZip.setLastModified(System.currentTimeMillis() - 10000));
+
+        // the spooled entry makes up for the temporary file, which is not an archive
+        snapshotUnzipRepo.setMaxCacheSize(3 * latestOtherZip.length());
+        snapshotRepoUnzipCache.initializeTracker().get();
+        final File latestZip = snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+
+        assertTrue(tempFile.exists());
+        assertFalse(oldZip.exists());
+        assertFalse(oldOtherzip.exists());
+        assertTrue(latestOtherZip.exists());
+        assertTrue(spoolDirectory.exists());
+        assertTrue(latestZip.exists());
+    }
+
+    @Test
+    public void testShutDownWhenRepositoryRemoved() throws Exception {
+        snapshotUnzipRepo.onRepositoryRegistryEventRemove(new RepositoryRegistryEventRemove(null,
+                createSnapshotRepo()));
+        assertFalse(snapshotRepoUnzipCache.isShutdown());
+
+        snapshotUnzipRepo.onRepositoryRegistryEventRemove(new RepositoryRegistryEventRemove(null, snapshotUnzipRepo));
+        assertTrue(snapshotRepoUnzipCache.isShutdown());
+        // work requested afterwards is dropped instead of failing the request
+        snapshotUnzipRepo.setMaxCacheSize(1);
+        snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+    }
+
+    @Test
+    public void testEvictionDeferredWhileArchiveIsRead() throws Exception {
+        assertTrue(oldZip.setLastModified(System.currentTimeMillis() - 30000));
+        assertTrue(oldOtherzip.setLastModified(System.currentTimeMillis() - 20000));
+        assertTrue(latestOtherZip.setLastModified(System.currentTimeMillis() - 10000));
+
+        final ZipFileHandle handle = snapshotRepoUnzipCache.borrowZipFile(PATH_TO_OLD_ZIP);
+        snapshotUnzipRepo.setMaxCacheSize(1);
+        snapshotRepoUnzipCache.initializeTracker().get();
+        snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+
+        assertTrue(oldZip.exists());
+        assertFalse(oldOtherzip.exists());
+        assertFalse(latestOtherZip.exists());
+
+        handle.release();
+        snapshotRepoUnzipCache.getArchive(PATH_TO_OLD_OTHER_ZIP);
+        assertFalse(oldZip.exists());
+    }
+
+    @Test
+    public void testCleanUpDeferredWhileArchiveIsRead() throws Exception {
+        final ZipFileHandle handle = snapshotRepoUnzipCache.borrowZipFile(PATH_TO_OLD_ZIP);
+        snapshotRepoUnzipCache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION));
+        assertTrue(oldZip.exists());
+        assertFalse(oldOtherzip.exists());
+
+        // deleted by the last reader
+        handle.release();
+        assertFalse(oldZip.exists());
+    }
+
+    @Test
+    public void testRetiredArchiveDeferredOnSecondCleanUp() throws Exception {
+        final ZipFileHandle handle = snapshotRepoUnzipCache.borrowZipFile(PATH_TO_OLD_ZIP);
+        final ConversionResult conversionResult = new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION);
+        snapshotRepoUnzipCache.cleanSnapshots(conversionResult);
+        snapshotRepoUnzipCache.cleanSnapshots(conversionResult);
+        assertTrue(oldZip.exists());
+
+        handle.release();
+        assertFalse(oldZip.exists());
+    }
+
+    @Test
+    public void testRetiredArchiveCachedAgainIsNotDeleted() throws Exception {
+        final ZipFileHandle handle = snapshotRepoUnzipCache.borrowZipFile(PATH_TO_OLD_ZIP);
+        snapshotRepoUnzipCache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP,
+                LATEST_VERSION, PATH_UP_TO_VERSION));
+
+        // the retired file is not served again, but replaced by a new download
+        assertEquals(oldZip, snapshotRepoUnzipCache.getArchive(PATH_TO_OLD_ZIP));
+        assertNotNull(handle.getZipFile().getEntry("test.txt"));
+        handle.release();
+
+        assertTrue(oldZip.exists());
+        final ZipFileHandle newHandle = snapshotRepoUnzipCache.borrowZipFile(PATH_TO_OLD_ZIP);
+        try {
+            assertFalse(handle == newHandle);
+            assertNotNull(newHandle.getZipFile().getEntry("test.txt"));
+        } finally {
+            newHandle.release();
+        }
+    }
+
+    @Test
+    public void testCachedArchiveLookedUpWithoutLock() throws Exception {
+        final PathLockMonitor folderLock = PathLock.getLock("/ga/1.0.0-SNAPSHOT/");
+        folderLock.lockExclusive();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<File> lookup = executor.submit(new GetArchive(snapshotRepoUnzipCache, PATH_TO_OLD_ZIP));
+            assertEquals(oldZip, lookup.get(10, TimeUnit.SECONDS));
+        } finally {
+            folderLock.unlockExclusive();
+            PathLock.releaseLock(folderLock);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPublishedArchiveResolvedWithoutFileSystem() throws Exception {
+        final long lastModified = oldZip.lastModified();
+        assertEquals(lastModified, snapshotRepoUnzipCache.getLastModified(PATH_TO_OLD_ZIP));
+
+        // the remembered state is used as long as the cache does not change the archive itself
+        assertTrue(oldZip.setLastModified(lastModified - 10000));
+        assertEquals(lastModified, snapshotRepoUnzipCache.getLastModified(PATH_TO_OLD_ZIP));
+    }
+
+    @Test
+    public void testArchiveDeletedOnOsLevelIsCachedAgain() throws Exception {
+        assertTrue(oldZip.delete());
+        final ZipFileHandle handle = snapshotRepoUnzipCache.borrowZipFile(PATH_TO_OLD_ZIP);
+        try {
+            assertTrue(oldZip.exists());
+            assertNotNull(handle.getZipFile());
+        } finally {
+            handle.release();
+        }
+    }
+
+    @Test
+    public void testOtherArchivesInFolderNotBlockedByDownload() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        final UnzipCache cache = createUnzipRepo(masterRepo).getCache();
+        final CountDownLatch downloadLatch = new CountDownLatch(1);
+        masterRepo.blockRetrieval(PATH_TO_LATEST_ZIP, downloadLatch);
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final Future<File> slowDownload = executor.submit(new GetArchive(cache, PATH_TO_LATEST_ZIP));
+            final Future<File> otherDownload = executor.submit(new GetArchive(cache, PATH_TO_OLD_ZIP));
+            assertTrue(otherDownload.get(10, TimeUnit.SECONDS).exists());
+            assertFalse(slowDownload.isDone());
+
+            downloadLatch.countDown();
+            assertTrue(slowDownload.get(10, TimeUnit.SECONDS).exists());
+        } finally {
+            downloadLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareDownload() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        final UnzipCache cache = createUnzipRepo(masterRepo).getCache();
+        final CountDownLatch downloadLatch = new CountDownLatch(1);
+        masterRepo.blockRetrieval(PATH_TO_LATEST_ZIP, downloadLatch);
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final List<Future<File>> results = new LinkedList<Future<File>>();
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(new GetArchive(cache, PATH_TO_LATEST_ZIP)));
+            }
+            downloadLatch.countDown();
+            for (final Future<File> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS).exists());
+            }
+            assertEquals(1, masterRepo.getRetrieveItemCount());
+        } finally {
+            downloadLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testDownloadOfMissingArchive() throws Exception {
+        snapshotRepoUnzipCache.getArchive("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101011-1.zip");
+    }
+
+    @Test
+    public void testAttributesOfCachedArchiveStored() throws Exception {
+        final AttributesHandler attributesHandler = EasyMock.createMock(AttributesHandler.class);
+        final Capture<StorageItem> storedItem = new Capture<StorageItem>();
+        attributesHandler.storeAttributes(EasyMock.capture(storedItem), EasyMock.anyObject(ContentLocator.class));
+        EasyMock.replay(attributesHandler);
+        snapshotUnzipRepo.setAttributesHandler(attributesHandler);
+
+        final File latestZip = snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+
+        EasyMock.verify(attributesHandler);
+        // an item of the unzip repository, not of the master repository
+        assertEquals(snapshotUnzipRepo.getId(), storedItem.getValue().getRepositoryId());
+        assertEquals(PATH_TO_LATEST_ZIP, storedItem.getValue().getPath());
+        assertEquals(latestZip.lastModified(), storedItem.getValue().getModified());
+        assertTrue(storedItem.getValue().getStoredLocally() > 0);
+    }
+
+    @Test
+    public void testHostedArchiveReadInPlace() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(masterRepo);
+        unzipRepo.setReadHostedArchivesInPlace(true);
+        final UnzipCache cache = unzipRepo.getCache();
+
+        final File archive = cache.getArchive(PATH_TO_LATEST_ZIP);
+        assertEquals(new File("./src/test/resources/snapshotRepo" + PATH_TO_LATEST_ZIP).getCanonicalFile(),
+                archive.getCanonicalFile());
+        final File cacheLocation = cache.getCacheLocation(PATH_TO_LATEST_ZIP);
+        assertFalse(cacheLocation.exists());
+
+        // the index is kept in the local storage, not in the master repository
+        cache.getArchiveIndex(PATH_TO_LATEST_ZIP);
+        assertTrue(new File(cacheLocation.getPath() + ".index").isFile());
+        assertFalse(new File(archive.getPath() + ".index").exists());
+
+        final int retrieveItemCount = masterRepo.getRetrieveItemCount();
+        assertEquals(archive, cache.getArchive(PATH_TO_LATEST_ZIP));
+        assertEquals(retrieveItemCount, masterRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testSidecarsOfArchiveReadInPlaceDeletedWhenArchiveChanges() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(masterRepo);
+        unzipRepo.setReadHostedArchivesInPlace(true);
+        final UnzipCache cache = unzipRepo.getCache();
+
+        final File archive = cache.getArchive(PATH_TO_LATEST_ZIP);
+        cache.getArchiveIndex(PATH_TO_LATEST_ZIP);
+        final File cacheLocation = cache.getCacheLocation(PATH_TO_LATEST_ZIP);
+        final File indexFile = new File(cacheLocation.getPath() + ".index");
+        final File spoolDirectory = new File(cacheLocation.getPath() + ".inflated");
+        assertTrue(spoolDirectory.mkdir());
+        assertTrue(new File(spoolDirectory, "entry").createNewFile());
+
+        assertTrue(indexFile.isFile());
+
+        final long lastModified = archive.lastModified();
+        assertTrue(archive.setLastModified(lastModified - 10000));
+        try {
+            cache.getArchive(PATH_TO_LATEST_ZIP);
+            assertFalse(indexFile.exists());
+            assertFalse(spoolDirectory.exists());
+        } finally {
+            archive.setLastModified(lastModified);
+        }
+    }
+
+    @Test
+    public void testSidecarsOfArchiveDeletedInMasterAreDeleted() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(masterRepo);
+        unzipRepo.setReadHostedArchivesInPlace(true);
+        final UnzipCache cache = unzipRepo.getCache();
+
+        final String deletedArchivePath = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101011-1.zip";
+        final File cacheLocation = cache.getCacheLocation(deletedArchivePath);
+        final File indexFile = new File(cacheLocation.getPath() + ".index");
+        final File spoolDirectory = new File(cacheLocation.getPath() + ".inflated");
+        assertTrue(spoolDirectory.mkdirs());
+        assertTrue(indexFile.createNewFile());
+        try {
+            cache.getArchive(deletedArchivePath);
+            fail("archive does not exist in the master repository");
+        } catch (final ItemNotFoundException e) {
+            // expected
+        }
+        assertFalse(indexFile.exists());
+        assertFalse(spoolDirectory.exists());
+    }
+
+    @Test
+    public void testCleanUpDeletesSidecarsOfArchivesReadInPlace() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(masterRepo);
+        unzipRepo.setReadHostedArchivesInPlace(true);
+        final UnzipCache cache = unzipRepo.getCache();
+        final File oldSpoolDirectory = new File(cache.getCacheLocation(PATH_TO_OLD_ZIP).getPath() + ".inflated");
+        final File latestSpoolDirectory = new File(cache.getCacheLocation(PATH_TO_LATEST_ZIP).getPath()
+                + ".inflated");
+        assertTrue(oldSpoolDirectory.mkdirs());
+        assertTrue(latestSpoolDirectory.mkdirs());
+
+        cache.cleanSnapshots(new ConversionResult(SNAPSHOT_REQUEST_PATH, PATH_TO_LATEST_ZIP, LATEST_VERSION,
+                PATH_UP_TO_VERSION));
+
+        assertFalse(oldSpoolDirectory.exists());
+        assertTrue(latestSpoolDirectory.exists());
+        // the archives in the master repository are not touched
+        assertTrue(new File("./src/test/resources/snapshotRepo" + PATH_TO_OLD_ZIP).isFile());
+    }
+
+    @Test
+    public void testHostedArchiveNotStoredAsFileRetrievedOnce() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        masterRepo.setStoreFilesAsFiles(false);
+        final DefaultUnzipRepository unzipRepo = createUnzipRepo(masterRepo);
+        unzipRepo.setReadHostedArchivesInPlace(true);
+        final UnzipCache cache = unzipRepo.getCache();
+
+        assertEquals(cache.getCacheLocation(PATH_TO_LATEST_ZIP), cache.getArchive(PATH_TO_LATEST_ZIP));
+
+        // the master repository is not asked again whether it stores the archives as files
+        final int retrieveItemCount = masterRepo.getRetrieveItemCount();
+        assertEquals(cache.getCacheLocation(PATH_TO_OLD_ZIP), cache.getArchive(PATH_TO_OLD_ZIP));
+        assertEquals(retrieveItemCount + 1, masterRepo.getRetrieveItemCount());
+        cache.getArchive(PATH_TO_LATEST_ZIP);
+        assertEquals(retrieveItemCount + 1, masterRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testHostedArchiveCachedByDefault() throws Exception {
+        final RepositoryMock masterRepo = createSnapshotRepo();
+        masterRepo.setBehaveAsHosted(true);
+        final UnzipCache cache = createUnzipRepo(masterRepo).getCache();
+
+        final File archive = cache.getArchive(PATH_TO_LATEST_ZIP);
+        assertEquals(cache.getCacheLocation(PATH_TO_LATEST_ZIP), archive);
+        assertTrue(archive.isFile());
+        // linked or copied, depending on the file system of the temporary folder
+        assertEquals(new File("./src/test/resources/snapshotRepo" + PATH_TO_LATEST_ZIP).length(), archive.length());
+    }
+
+    @Test
+    public void testLinkFile() throws IOException {
+        final File directory = createTempDirectory();
+        try {
+            final File source = new File(directory, "source.zip");
+            FileUtils.fileWrite(source, "content");
+            final File target = new File(directory, "cache/target.zip");
+
+            assertTrue(UnzipCache.linkFile(source, target));
+            assertTrue(Files.isSameFile(source.toPath(), target.toPath()));
+            // no temporary link is left behind
+            assertEquals(1, target.getParentFile().list().length);
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testLinkFileReplacesExistingFile() throws IOException {
+        final File directory = createTempDirectory();
+        try {
+            final File source = new File(directory, "source.zip");
+            FileUtils.fileWrite(source, "new content");
+            final File target = new File(directory, "target.zip");
+            FileUtils.fileWrite(target, "old content");
+
+            assertTrue(UnzipCache.linkFile(source, target));
+            assertEquals("new content", FileUtils.fileRead(target));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testLinkedFileNotCountedAsCached() throws IOException {
+        final File directory = createTempDirectory();
+        try {
+            final File source = new File(directory, "source.zip");
+            FileUtils.fileWrite(source, "content");
+            final File target = new File(directory, "cache/target.zip");
+            Assume.assumeTrue(UnzipCache.linkFile(source, target));
+
+            assertEquals(0L, Util.getCachedSize(target));
+            // the space is only occupied by the cache once the master repository deleted its file
+            assertTrue(source.delete());
+            assertEquals(target.length(), Util.getCachedSize(target));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testLinkOfMissingFile() throws IOException {
+        final File directory = createTempDirectory();
+        try {
+            final File target = new File(directory, "target.zip");
+            assertFalse(UnzipCache.linkFile(new File(directory, "missing.zip"), target));
+            assertFalse(target.exists());
+            assertEquals(0, directory.list().length);
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    private static File createTempDirectory() throws IOException {
+        final File directory = File.createTempFile("unzip-cache", "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    @Test
+    public void testArchiveOfOtherRepositoryCachedIfReadInPlace() throws Exception {
+        snapshotUnzipRepo.setReadHostedArchivesInPlace(true);
+
+        final File archive = snapshotRepoUnzipCache.getArchive(PATH_TO_LATEST_ZIP);
+        assertEquals(snapshotRepoUnzipCache.getCacheLocation(PATH_TO_LATEST_ZIP), archive);
+        assertTrue(archive.isFile());
+    }
+
+    static class GetArchive implements Callable<File> {
+        private final UnzipCache cache;
+        private final String archivePath;
+
+        GetArchive(final UnzipCache cache, final String archivePath) {
+            this.cache = cache;
+            this.archivePath = archivePath;
+        }
+
+        @Override
+        public File call() throws Exception {
+            return cache.getArchive(archivePath);
+        }
+    }
+
     @Test
     public void testCacheForThreadSafty() throws InterruptedException, ExecutionException {
         final CountDownLatch startSignal = new CountDownLatch(1);
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class VersionIndexTest {
+
+    private static final String[] VERSIONS = { "1.0.0", "2.0.0-SNAPSHOT", "1.1.0", "0.9", "1.10.0", "1.2.0-SNAPSHOT",
+            "1.2.0", "1.0", "3.0.0-SNAPSHOT" };
+
+    private static final String[] RANGES = { "[1.0,2.0)", "[1.0,2.0]", "(,1.1.0]", "(,1.1.0)", "[1.1.0,)",
+            "(1.1.0,)", "[1.2.0]", "(,0.9)", "[4.0,)", "(,1.0],[1.2.0,1.3)", "[0.9,1.0),(1.1.0,1.2.0)",
+            "[1.2.0-SNAPSHOT]", "(1.0.0,1.1.0)" };
+
+    @Test
+    public void testLatestVersion() {
+        final VersionIndex index = createIndex(VERSIONS);
+        assertEquals("3.0.0-SNAPSHOT", index.getLatestVersion(null, true));
+        assertEquals("1.10.0", index.getLatestVersion(null, false));
+    }
+
+    @Test
+    public void testLatestVersionWithinRange() throws Exception {
+        final VersionIndex index = createIndex(VERSIONS);
+        assertEquals("1.10.0", index.getLatestVersion(VersionRange.createFromVersionSpec("[1.0,2.0)"), false));
+        assertEquals("2.0.0-SNAPSHOT", index.getLatestVersion(VersionRange.createFromVersionSpec("[1.0,2.0]"), true));
+        assertEquals("1.0.0", index.getLatestVersion(VersionRange.createFromVersionSpec("(,1.1.0)"), false));
+        assertNull(index.getLatestVersion(VersionRange.createFromVersionSpec("(,0.9)"), false));
+        assertNull(index.getLatestVersion(VersionRange.createFromVersionSpec("[4.0,)"), true));
+    }
+
+    @Test
+    public void testRangesLikeVersionRangeMatching() throws Exception {
+        final VersionIndex index = createIndex(VERSIONS);
+        for (final String spec : RANGES) {
+            for (final boolean includeSnapshots : new boolean[] { true, false }) {
+                final VersionRange range = VersionRange.createFromVersionSpec(spec);
+                final ArtifactVersion expected = range.matchVersion(toArtifactVersions(VERSIONS, includeSnapshots));
+                final String actual = index.getLatestVersion(range, includeSnapshots);
+                if (expected == null) {
+                    assertNull(spec, actual);
+                } else {
+                    assertEquals(spec, expected.toString(), actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFirstOfEqualVersionsSelected() throws Exception {
+        assertEquals("1.0.0", createIndex(VERSIONS).getLatestVersion(VersionRange.createFromVersionSpec("[1.0]"),
+                false));
+        assertEquals("1.0", createIndex("1.0", "1.0.0").getLatestVersion(null, false));
+        assertEquals("1.0.0", createIndex("1.0.0", "1.0").getLatestVersion(null, false));
+    }
+
+    @Test
+    public void testNoVersions() {
+        final VersionIndex index = createIndex();
+        assertFalse(index.hasVersions(true));
+        assertNull(index.getLatestVersion(null, true));
+    }
+
+    @Test
+    public void testOnlySnapshotVersions() {
+        final VersionIndex index = createIndex("1.0.0-SNAPSHOT", "1.1.0-SNAPSHOT");
+        assertTrue(index.hasVersions(true));
+        assertFalse(index.hasVersions(false));
+        assertEquals("1.1.0-SNAPSHOT", index.getLatestVersion(null, true));
+        assertNull(index.getLatestVersion(null, false));
+    }
+
+    private static VersionIndex createIndex(final String... versions) {
+        final Versioning versioning = new Versioning();
+        for (final String version : versions) {
+            versioning.addVersion(version);
+        }
+        return new VersionIndex(versioning);
+    }
+
+    private static List<ArtifactVersion> toArtifactVersions(final String[] versions, final boolean includeSnapshots) {
+        final List<ArtifactVersion> artifactVersions = new ArrayList<ArtifactVersion>();
+        for (final String version : versions) {
+            if (includeSnapshots || !version.endsWith("-SNAPSHOT")) {
+                artifactVersions.add(new DefaultArtifactVersion(version));
+            }
+        }
+        return artifactVersions;
+    }
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.cache;
+
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.tycho.nexus.internal.plugin.DefaultUnzipRepository;
+import org.eclipse.tycho.nexus.internal.plugin.test.RepositoryMock;
+import org.eclipse.tycho.nexus.internal.plugin.test.UnzipPluginTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventRetrieve;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStoreUpdate;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+@SuppressWarnings("nls")
+public class VersioningCacheTest extends UnzipPluginTestSupport {
+
+    private static final String SNAPSHOT_REQUEST_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-SNAPSHOT.zip-unzip";
+    private static final String CONVERTED_PATH = "/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip-unzip";
+    private static final String METADATA_PATH = "/ga/1.0.0-SNAPSHOT/maven-metadata.xml";
+
+    private RepositoryMock snapshotRepo;
+    private DefaultUnzipRepository snapshotUnzipRepo;
+
+    @Before
+    public void setupTestRepos() throws Exception {
+        snapshotRepo = createSnapshotRepo();
+        snapshotUnzipRepo = createUnzipRepo(snapshotRepo);
+    }
+
+    @Test
+    public void testCacheShutDownWhenRepositoryRemoved() throws Exception {
+        final VersioningCache versioningCache = snapshotUnzipRepo.getVersioningCache();
+        snapshotUnzipRepo.onRepositoryRegistryEventRemove(new RepositoryRegistryEventRemove(null, snapshotRepo));
+        assertFalse(versioningCache.isShutdown());
+
+        snapshotUnzipRepo.onRepositoryRegistryEventRemove(new RepositoryRegistryEventRemove(null, snapshotUnzipRepo));
+        assertTrue(versioningCache.isShutdown());
+    }
+
+    @Test
+    public void testMetadataReadOnce() throws Exception {
+        assertConverted();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        assertConverted();
+        assertConverted();
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testMetadataReadWithoutCache() throws Exception {
+        RequestPathConverter.convert(snapshotRepo, new ResourceStoreRequest(SNAPSHOT_REQUEST_PATH), true);
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        RequestPathConverter.convert(snapshotRepo, new ResourceStoreRequest(SNAPSHOT_REQUEST_PATH), true);
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testInvalidatedByMetadataChange() throws Exception {
+        assertConverted();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+
+        snapshotUnzipRepo.getVersioningCache().invalidate("/ga/1.0.0-SNAPSHOT/archive-1.0.0-20101013-2.zip", false);
+        assertConverted();
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+
+        snapshotUnzipRepo.getVersioningCache().invalidate(METADATA_PATH, false);
+        assertConverted();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testInvalidatedByFolderDeletion() throws Exception {
+        assertConverted();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+
+        snapshotUnzipRepo.getVersioningCache().invalidate("/ga", true);
+        assertConverted();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testInvalidatedByItemEvent() throws Exception {
+        assertConverted();
+        final StorageItem metadataItem = snapshotRepo.retrieveItem(new ResourceStoreRequest(METADATA_PATH));
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+
+        snapshotUnzipRepo.onMetadataItemEvent(new RepositoryItemEventRetrieve(snapshotRepo, metadataItem));
+        assertConverted();
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+
+        snapshotUnzipRepo.onMetadataItemEvent(new RepositoryItemEventStoreUpdate(snapshotRepo, metadataItem));
+        assertConverted();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testConversionReusedForPathsIntoSameArtifact() throws Exception {
+        snapshotUnzipRepo.setVersionRefreshInterval(60);
+        // the versioning information would expire in the meantime
+        snapshotUnzipRepo.setMetadataMaxAge(1);
+        assertConverted();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        Thread.sleep(1100);
+
+        assertConverted();
+        assertConverted("/dir/file.txt");
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testUnconvertedRequestNotCached() throws Exception {
+        snapshotUnzipRepo.setVersionRefreshInterval(60);
+        // an artifact which is not deployed yet
+        final ResourceStoreRequest request = new ResourceStoreRequest("/gb/RELEASE/archive-RELEASE.zip-unzip");
+        assertFalse(RequestPathConverter.convert(snapshotRepo, request, true, snapshotUnzipRepo.getVersioningCache())
+                .isPathConverted());
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+
+        // resolved again, as the first release may have been deployed in the meantime
+        assertFalse(RequestPathConverter.convert(snapshotRepo, request, true, snapshotUnzipRepo.getVersioningCache())
+                .isPathConverted());
+        assertTrue(snapshotRepo.getRetrieveItemCount() > retrieveCount);
+    }
+
+    @Test
+    public void testStaleConversionServedWhileRefreshed() throws Exception {
+        snapshotUnzipRepo.setVersionRefreshInterval(1);
+        snapshotUnzipRepo.setMetadataMaxAge(1);
+        assertConverted();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        Thread.sleep(1100);
+
+        final CountDownLatch metadataLatch = new CountDownLatch(1);
+        snapshotRepo.blockRetrieval(METADATA_PATH, metadataLatch);
+        try {
+            // served while the refresh waits for the metadata
+            assertConverted();
+            assertConverted("/dir/file.txt");
+        } finally {
+            metadataLatch.countDown();
+        }
+        for (int i = 0; i < 100 && snapshotRepo.getRetrieveItemCount() == retrieveCount; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testConversionInvalidatedByMetadataChange() throws Exception {
+        snapshotUnzipRepo.setVersionRefreshInterval(60);
+        assertConverted();
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+
+        snapshotUnzipRepo.getVersioningCache().invalidate("/ga/maven-metadata.xml", false);
+        assertConverted();
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+
+        snapshotUnzipRepo.getVersioningCache().invalidate(METADATA_PATH, false);
+        assertConverted();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+
+        snapshotUnzipRepo.getVersioningCache().invalidate("/ga", true);
+        assertConverted();
+        assertEquals(retrieveCount + 2, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testConcurrentReadsCombined() throws Exception {
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        final CountDownLatch metadataLatch = new CountDownLatch(1);
+        snapshotRepo.blockRetrieval(METADATA_PATH, metadataLatch);
+        final ConversionThread firstRequest = new ConversionThread();
+        final ConversionThread secondRequest = new ConversionThread();
+        try {
+            firstRequest.start();
+            waitForRetrieveCount(retrieveCount + 1);
+            secondRequest.start();
+            waitUntilWaiting(secondRequest);
+        } finally {
+            metadataLatch.countDown();
+        }
+        firstRequest.assertConverted();
+        secondRequest.assertConverted();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    @Test
+    public void testLastKnownVersioningUsedIfReadTimesOut() throws Exception {
+        snapshotUnzipRepo.setMetadataMaxAge(1);
+        snapshotUnzipRepo.setMetadataReadTimeout(1);
+        assertConverted();
+        Thread.sleep(1100);
+
+        final CountDownLatch metadataLatch = new CountDownLatch(1);
+        snapshotRepo.blockRetrieval(METADATA_PATH, metadataLatch);
+        try {
+            final long start = System.nanoTime();
+            assertConverted();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            metadataLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testReadTimesOutWithoutLastKnownVersioning() throws Exception {
+        snapshotUnzipRepo.setMetadataReadTimeout(1);
+        final int retrieveCount = snapshotRepo.getRetrieveItemCount();
+        final CountDownLatch metadataLatch = new CountDownLatch(1);
+        snapshotRepo.blockRetrieval(METADATA_PATH, metadataLatch);
+        try {
+            // also the request which starts the read waits at most the timeout
+            final long start = System.nanoTime();
+            try {
+                assertConverted();
+                fail("LocalStorageException expected");
+            } catch (final LocalStorageException e) {
+                // expected
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            metadataLatch.countDown();
+        }
+        // the read is completed in the background
+        waitForReadCompleted();
+        assertConverted();
+        assertEquals(retrieveCount + 1, snapshotRepo.getRetrieveItemCount());
+    }
+
+    private void waitForRetrieveCount(final int retrieveCount) throws InterruptedException {
+        for (int i = 0; i < 100 && snapshotRepo.getRetrieveItemCount() < retrieveCount; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(retrieveCount, snapshotRepo.getRetrieveItemCount());
+    }
+
+    private void waitForReadCompleted() throws InterruptedException {
+        final VersioningCache versioningCache = snapshotUnzipRepo.getVersioningCache();
+        for (int i = 0; i < 100 && versioningCache.get(snapshotRepo, METADATA_PATH) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(versioningCache.get(snapshotRepo, METADATA_PATH));
+    }
+
+    private void waitUntilWaiting(final Thread thread) throws InterruptedException {
+        for (int i = 0; i < 100 && thread.getState() != Thread.State.WAITING; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    private class ConversionThread extends Thread {
+        private volatile Exception failure;
+
+        @Override
+        public void run() {
+            try {
+                VersioningCacheTest.this.assertConverted();
+            } catch (final Exception e) {
+                failure = e;
+            }
+        }
+
+        void assertConverted() throws Exception {
+            join(5000);
+            assertFalse(isAlive());
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void assertConverted() throws Exception {
+        assertConverted("");
+    }
+
+    private void assertConverted(final String pathEnd) throws Exception {
+        final ConversionResult conversionResult = RequestPathConverter.convert(snapshotRepo,
+                new ResourceStoreRequest(SNAPSHOT_REQUEST_PATH + pathEnd), true,
+                snapshotUnzipRepo.getVersioningCache());
+        assertTrue(conversionResult.isPathConverted());
+        assertEquals(SNAPSHOT_REQUEST_PATH + pathEnd, conversionResult.getOriginalPath());
+        assertEquals(CONVERTED_PATH + pathEnd, conversionResult.getConvertedPath());
+    }
+}
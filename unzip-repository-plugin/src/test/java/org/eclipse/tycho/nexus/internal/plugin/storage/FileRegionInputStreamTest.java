@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.archive;
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.crc;
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.readFully;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class FileRegionInputStreamTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes();
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File archive;
+    private RandomAccessFile file;
+    private FileChannel channel;
+
+    @Before
+    public void createArchive() throws IOException {
+        final ZipEntry entry = new ZipEntry("stored.txt");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(CONTENT.length);
+        entry.setCrc(crc(CONTENT));
+        // the extra field in the local header shifts the entry data
+        entry.setExtra(new byte[] { (byte) 0xCA, (byte) 0xFE, 2, 0, 1, 2 });
+        archive = archive(new File(tempFolder.getRoot(), "archive.zip")).entry(entry, CONTENT).write();
+        file = new RandomAccessFile(archive, "r");
+        channel = file.getChannel();
+    }
+
+    @After
+    public void closeArchive() throws IOException {
+        file.close();
+    }
+
+    @Test
+    public void testReadEntryData() throws IOException {
+        Assert.assertArrayEquals(CONTENT, readFully(openEntry()));
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        final InputStream in = openEntry();
+        Assert.assertEquals(10, in.skip(10));
+        Assert.assertEquals('a', in.read());
+        Assert.assertEquals(9, in.skip(100));
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testMarkAndReset() throws IOException {
+        final InputStream in = openEntry();
+        in.skip(5);
+        in.mark(0);
+        Assert.assertEquals('5', in.read());
+        in.reset();
+        Assert.assertEquals(new String(CONTENT, 5, CONTENT.length - 5), new String(readFully(in)));
+    }
+
+    private FileRegionInputStream openEntry() throws IOException {
+        final ZipArchiveEntry entry = ZipArchiveIndex.read(archive).getEntry("stored.txt");
+        return new FileRegionInputStream(channel, entry.getDataOffset(channel), entry.getSize());
+    }
+}
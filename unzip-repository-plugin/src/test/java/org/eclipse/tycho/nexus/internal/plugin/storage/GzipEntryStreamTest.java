@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.archive;
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.readFully;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class GzipEntryStreamTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private byte[] content;
+    private File archive;
+
+    @Before
+    public void createArchive() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("<unit id='bundle.").append(i).append("' version='1.0.0'/>\n");
+        }
+        content = text.toString().getBytes("UTF-8");
+
+        archive = archive(new File(tempFolder.getRoot(), "archive.zip")).deflated("content.xml", content)
+                .directory("dir").write();
+    }
+
+    @Test
+    public void testCanWrap() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        Assert.assertTrue(GzipEntryStream.canWrap(index.getEntry("content.xml")));
+        Assert.assertFalse(GzipEntryStream.canWrap(index.getEntry("dir")));
+    }
+
+    @Test
+    public void testGzipStreamOfDeflatedEntry() throws IOException {
+        final ZipArchiveEntry entry = ZipArchiveIndex.read(archive).getEntry("content.xml");
+        final RandomAccessFile file = new RandomAccessFile(archive, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final InputStream rawData = new FileRegionInputStream(channel, entry.getDataOffset(channel),
+                    entry.getCompressedSize());
+
+            final byte[] gzip = readFully(GzipEntryStream.wrap(entry, rawData));
+            Assert.assertEquals(GzipEntryStream.getLength(entry), gzip.length);
+            Assert.assertTrue(gzip.length < content.length);
+            // GZIPInputStream verifies the CRC and the size in the trailer
+            Assert.assertArrayEquals(content, readFully(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.archive;
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.readFully;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class InflatedEntrySpoolTest {
+
+    private static final String ENTRY_NAME = "sdk/big.bin";
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private byte[] content;
+    private File directory;
+    private File archive;
+    private ZipFile zipFile;
+    private ZipArchiveEntry entry;
+
+    @Before
+    public void createArchive() throws IOException {
+        content = new byte[(int) InflatedEntrySpool.MIN_ENTRY_SIZE + 4711];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        directory = tempFolder.getRoot();
+        archive = archive(new File(directory, "archive.zip")).deflated(ENTRY_NAME, content).write();
+        zipFile = new ZipFile(archive);
+        entry = ZipArchiveIndex.read(archive).getEntry(ENTRY_NAME);
+    }
+
+    @After
+    public void closeArchive() throws IOException {
+        zipFile.close();
+    }
+
+    @Test
+    public void testIsWorthSpooling() {
+        Assert.assertTrue(InflatedEntrySpool.isWorthSpooling(entry));
+    }
+
+    @Test
+    public void testCompleteReadCreatesSpool() throws IOException {
+        final InflatedEntrySpool spool = new InflatedEntrySpool(archive, entry);
+        Assert.assertFalse(spool.isAvailable());
+
+        Assert.assertArrayEquals(content, readFully(spool.spool(openEntry())));
+        Assert.assertTrue(spool.isAvailable());
+        Assert.assertTrue(new InflatedEntrySpool(archive, entry).isAvailable());
+
+        final InputStream spooled = spool.open();
+        try {
+            final long offset = content.length - 1000;
+            Assert.assertEquals(offset, spooled.skip(offset));
+            Assert.assertEquals(content[(int) offset] & 0xFF, spooled.read());
+        } finally {
+            spooled.close();
+        }
+    }
+
+    @Test
+    public void testIncompleteReadDiscardsSpool() throws IOException {
+        final InflatedEntrySpool spool = new InflatedEntrySpool(archive, entry);
+        final InputStream in = spool.spool(openEntry());
+        in.read(new byte[100]);
+        in.close();
+        Assert.assertFalse(spool.isAvailable());
+        Assert.assertEquals(0, new File(directory, archive.getName() + ".inflated").list().length);
+    }
+
+    @Test
+    public void testSkipDiscardsSpool() throws IOException {
+        final InflatedEntrySpool spool = new InflatedEntrySpool(archive, entry);
+        final InputStream in = spool.spool(openEntry());
+        Assert.assertEquals(10, in.skip(10));
+        Assert.assertEquals(content.length - 10, readFully(in).length);
+        Assert.assertFalse(spool.isAvailable());
+    }
+
+    private InputStream openEntry() throws IOException {
+        return zipFile.getInputStream(zipFile.getEntry(ENTRY_NAME));
+    }
+}
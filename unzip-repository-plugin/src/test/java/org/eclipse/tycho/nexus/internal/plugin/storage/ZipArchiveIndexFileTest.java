@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.ArchiveBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class ZipArchiveIndexFileTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File archive;
+
+    @Before
+    public void createArchive() throws IOException {
+        archive = archive(new File(tempFolder.getRoot(), "archive.zip")).directory("plugins")
+                .deflated("plugins/org.example.bundle_1.0.0.jar", "bundle")
+                .deflated("plugins/org.example.bundle_1.1.0.jar", "bundle 1.1")
+                // parents only implicitly contained
+                .deflated("features/f\u00fcature/feature.xml", "<feature/>")
+                .deflated("artifacts.jar", "artifacts").write();
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        ZipArchiveIndexFile.store(index, archive);
+        Assert.assertTrue(ZipArchiveIndexFile.getIndexFile(archive).isFile());
+
+        final ZipArchiveIndex loadedIndex = ZipArchiveIndexFile.load(archive);
+        Assert.assertNotNull(loadedIndex);
+        Assert.assertTrue(loadedIndex.isUpToDate(archive));
+        Assert.assertEquals(index.size(), loadedIndex.size());
+
+        final Iterator<ZipArchiveEntry> loadedEntries = loadedIndex.getEntries().iterator();
+        for (final ZipArchiveEntry entry : index.getEntries()) {
+            final ZipArchiveEntry loadedEntry = loadedEntries.next();
+            Assert.assertEquals(entry.getName(), loadedEntry.getName());
+            Assert.assertEquals(entry.isDirectory(), loadedEntry.isDirectory());
+            Assert.assertEquals(entry.getMethod(), loadedEntry.getMethod());
+            Assert.assertEquals(entry.getSize(), loadedEntry.getSize());
+            Assert.assertEquals(entry.getCompressedSize(), loadedEntry.getCompressedSize());
+            Assert.assertEquals(entry.getCrc(), loadedEntry.getCrc());
+            Assert.assertEquals(entry.getLocalHeaderOffset(), loadedEntry.getLocalHeaderOffset());
+        }
+
+        Assert.assertEquals(names(index.getChildren("")), names(loadedIndex.getChildren("")));
+        for (final ZipArchiveEntry entry : index.getEntries()) {
+            Assert.assertEquals(names(index.getChildren(entry.getName())),
+                    names(loadedIndex.getChildren(entry.getName())));
+        }
+        Assert.assertTrue(loadedIndex.getEntry("features/f\u00fcature").isDirectory());
+    }
+
+    @Test
+    public void testModifiedArchive() throws IOException {
+        ZipArchiveIndexFile.store(ZipArchiveIndex.read(archive), archive);
+        archive.setLastModified(archive.lastModified() - 10000);
+        Assert.assertNull(ZipArchiveIndexFile.load(archive));
+    }
+
+    @Test
+    public void testCorruptIndexFile() throws IOException {
+        ZipArchiveIndexFile.store(ZipArchiveIndex.read(archive), archive);
+        final RandomAccessFile indexFile = new RandomAccessFile(ZipArchiveIndexFile.getIndexFile(archive), "rw");
+        try {
+            indexFile.setLength(indexFile.length() - 3);
+        } finally {
+            indexFile.close();
+        }
+        Assert.assertNull(ZipArchiveIndexFile.load(archive));
+    }
+
+    @Test
+    public void testIndexFileWithNameOutsideOfNamesRejected() throws IOException {
+        ZipArchiveIndexFile.store(ZipArchiveIndex.read(archive), archive);
+        // the name offset of the first entry record
+        overwriteInt(40, Integer.MAX_VALUE - 1);
+        Assert.assertNull(ZipArchiveIndexFile.load(archive));
+
+        // read from the archive again instead
+        final ZipArchiveIndex index = new ZipArchiveIndexCache().getIndex(archive);
+        Assert.assertEquals("artifacts.jar", index.getEntry("artifacts.jar").getName());
+        Assert.assertNotNull(ZipArchiveIndexFile.load(archive));
+    }
+
+    @Test
+    public void testIndexFileWithNegativeCountRejected() throws IOException {
+        ZipArchiveIndexFile.store(ZipArchiveIndex.read(archive), archive);
+        // the length of the names
+        overwriteInt(36, -1);
+        Assert.assertNull(ZipArchiveIndexFile.load(archive));
+    }
+
+    @Test
+    public void testIndexFileWithCyclicLinksRejected() throws IOException {
+        ZipArchiveIndexFile.store(ZipArchiveIndex.read(archive), archive);
+        final int rootFirstChild = readInt(32);
+        Assert.assertTrue(rootFirstChild >= 0);
+        // the next sibling of the first child of the root points back to itself
+        overwriteInt(40 + rootFirstChild * 56 + 48, rootFirstChild);
+        Assert.assertNull(ZipArchiveIndexFile.load(archive));
+    }
+
+    @Test
+    public void testMissingIndexFile() {
+        Assert.assertNull(ZipArchiveIndexFile.load(archive));
+    }
+
+    @Test
+    public void testCachePersistsIndex() throws IOException {
+        final ZipArchiveIndexCache cache = new ZipArchiveIndexCache();
+        cache.getIndex(archive);
+        Assert.assertTrue(ZipArchiveIndexFile.getIndexFile(archive).isFile());
+
+        final ZipArchiveIndex loadedIndex = new ZipArchiveIndexCache().getIndex(archive);
+        Assert.assertEquals(7, loadedIndex.size());
+
+        cache.invalidate(archive);
+        Assert.assertFalse(ZipArchiveIndexFile.getIndexFile(archive).exists());
+    }
+
+    @Test
+    public void testDataOffsetRemembered() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        ZipArchiveIndexFile.store(index, archive);
+        final ZipArchiveEntry entry = ZipArchiveIndexFile.load(archive).getEntry("artifacts.jar");
+        final RandomAccessFile file = new RandomAccessFile(archive, "r");
+        final long dataOffset;
+        try {
+            dataOffset = entry.getDataOffset(file.getChannel());
+        } finally {
+            file.close();
+        }
+
+        // no channel needed, as the offset is taken from the index file
+        Assert.assertEquals(dataOffset, ZipArchiveIndexFile.load(archive).getEntry("artifacts.jar")
+                .getDataOffset(null));
+    }
+
+    @Test
+    public void testLookupOfManyEntries() throws IOException {
+        final ArchiveBuilder builder = archive(archive);
+        for (int i = 0; i < 2000; i++) {
+            builder.deflated("dir" + (i % 10) + "/file" + i + ".txt", new byte[0]);
+        }
+        builder.write();
+        ZipArchiveIndexFile.store(ZipArchiveIndex.read(archive), archive);
+        final ZipArchiveIndex index = ZipArchiveIndexFile.load(archive);
+
+        Assert.assertEquals(2010, index.size());
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertEquals("dir" + (i % 10) + "/file" + i + ".txt",
+                    index.getEntry("dir" + (i % 10) + "/file" + i + ".txt").getName());
+        }
+        Assert.assertNull(index.getEntry("dir1/file2000.txt"));
+        Assert.assertEquals(200, index.getChildren("dir3/").size());
+        Assert.assertEquals(10, index.getChildren("").size());
+    }
+
+    private void overwriteInt(final long position, final int value) throws IOException {
+        final RandomAccessFile indexFile = new RandomAccessFile(ZipArchiveIndexFile.getIndexFile(archive), "rw");
+        try {
+            indexFile.seek(position);
+            indexFile.writeInt(value);
+        } finally {
+            indexFile.close();
+        }
+    }
+
+    private int readInt(final long position) throws IOException {
+        final RandomAccessFile indexFile = new RandomAccessFile(ZipArchiveIndexFile.getIndexFile(archive), "r");
+        try {
+            indexFile.seek(position);
+            return indexFile.readInt();
+        } finally {
+            indexFile.close();
+        }
+    }
+
+    private static List<String> names(final List<ZipArchiveEntry> entries) {
+        final List<String> names = new ArrayList<String>();
+        for (final ZipArchiveEntry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+}
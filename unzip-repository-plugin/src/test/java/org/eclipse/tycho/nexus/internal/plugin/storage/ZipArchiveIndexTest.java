@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.archive;
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.crc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("nls")
+public class ZipArchiveIndexTest {
+
+    private static final byte[] STORED_CONTENT = "some stored content".getBytes();
+    private static final byte[] DEFLATED_CONTENT = "some deflated content, some deflated content".getBytes();
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File archive;
+
+    @Before
+    public void createArchive() throws IOException {
+        archive = archive(new File(tempFolder.getRoot(), "archive.zip")).directory("dir")
+                .stored("dir/stored.txt", STORED_CONTENT).deflated("deflated.txt", DEFLATED_CONTENT).write();
+    }
+
+    @Test
+    public void testEntryMetadata() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        Assert.assertEquals(3, index.size());
+
+        final ZipArchiveEntry dir = index.getEntry("dir");
+        Assert.assertTrue(dir.isDirectory());
+        Assert.assertEquals("dir", dir.getName());
+
+        final ZipArchiveEntry stored = index.getEntry("dir/stored.txt");
+        Assert.assertFalse(stored.isDirectory());
+        Assert.assertEquals(ZipEntry.STORED, stored.getMethod());
+        Assert.assertEquals(STORED_CONTENT.length, stored.getSize());
+        Assert.assertEquals(STORED_CONTENT.length, stored.getCompressedSize());
+        Assert.assertEquals(crc(STORED_CONTENT), stored.getCrc());
+
+        final ZipArchiveEntry deflated = index.getEntry("deflated.txt");
+        Assert.assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+        Assert.assertEquals(DEFLATED_CONTENT.length, deflated.getSize());
+        Assert.assertEquals(crc(DEFLATED_CONTENT), deflated.getCrc());
+    }
+
+    @Test
+    public void testLocalHeaderOffsets() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        final RandomAccessFile file = new RandomAccessFile(archive, "r");
+        try {
+            for (final ZipArchiveEntry entry : index.getEntries()) {
+                file.seek(entry.getLocalHeaderOffset());
+                // local file header signature 0x04034b50 in little endian
+                Assert.assertEquals(0x504b0304, file.readInt());
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testLookupWithTrailingSlash() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        Assert.assertEquals("dir", index.getEntry("dir/").getName());
+        Assert.assertEquals(index.getEntry("dir").getLocalHeaderOffset(), index.getEntry("dir/")
+                .getLocalHeaderOffset());
+        Assert.assertNull(index.getEntry("x.txt"));
+    }
+
+    @Test
+    public void testCacheReusesIndexUntilArchiveIsModified() throws IOException {
+        final ZipArchiveIndexCache cache = new ZipArchiveIndexCache();
+        final ZipArchiveIndex index = cache.getIndex(archive);
+        Assert.assertSame(index, cache.getIndex(archive));
+
+        Assert.assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+        Assert.assertFalse(index.isUpToDate(archive));
+        Assert.assertNotSame(index, cache.getIndex(archive));
+    }
+
+    @Test
+    public void testChildren() throws IOException {
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        assertNames(index.getChildren(""), "dir", "deflated.txt");
+        assertNames(index.getChildren("dir/"), "dir/stored.txt");
+        assertNames(index.getChildren("dir/stored.txt"));
+        assertNames(index.getChildren("x"));
+    }
+
+    @Test
+    public void testImplicitDirectories() throws IOException {
+        archive(archive).deflated("a/b/c.txt", "").deflated("a/d.txt", "").directory("e").write();
+        final ZipArchiveIndex index = ZipArchiveIndex.read(archive);
+        Assert.assertEquals(5, index.size());
+
+        final ZipArchiveEntry implicitDirectory = index.getEntry("a/b/");
+        Assert.assertTrue(implicitDirectory.isDirectory());
+        Assert.assertEquals(-1, implicitDirectory.getLocalHeaderOffset());
+
+        assertNames(index.getChildren(""), "a", "e");
+        assertNames(index.getChildren("a"), "a/b", "a/d.txt");
+        assertNames(index.getChildren("a/b"), "a/b/c.txt");
+        assertNames(index.getChildren("e"));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testNoArchive() throws IOException {
+        final FileOutputStream out = new FileOutputStream(archive);
+        try {
+            out.write("this is not a zip file, but long enough to be one".getBytes());
+        } finally {
+            out.close();
+        }
+        ZipArchiveIndex.read(archive);
+    }
+
+    private static void assertNames(final List<ZipArchiveEntry> entries, final String... expectedNames) {
+        final List<String> names = new ArrayList<String>();
+        for (final ZipArchiveEntry entry : entries) {
+            names.add(entry.getName());
+        }
+        Assert.assertEquals(Arrays.asList(expectedNames), names);
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2014 SAP AG and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    SAP AG - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tycho.nexus.internal.plugin.storage;
+
+import static org.eclipse.tycho.nexus.internal.plugin.test.TestUtil.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.tycho.nexus.internal.plugin.storage.ZipFileHandlePool.ZipFileHandle;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+@SuppressWarnings("nls")
+public class ZipFileHandlePoolTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File archive1;
+    private File archive2;
+    private File archive3;
+
+    @Before
+    public void createArchives() throws IOException {
+        archive1 = createArchive("archive1.zip");
+        archive2 = createArchive("archive2.zip");
+        archive3 = createArchive("archive3.zip");
+    }
+
+    @Test
+    public void testHandleIsShared() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle handle = pool.borrow(archive1);
+        Assert.assertSame(handle, pool.borrow(archive1));
+        handle.release();
+        handle.release();
+        // idle handles stay open for the next reader
+        Assert.assertSame(handle, pool.borrow(archive1));
+        Assert.assertNotNull(handle.getZipFile().getEntry("a.txt"));
+        handle.release();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIdleHandleIsClosed() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle handle1 = pool.borrow(archive1);
+        final ZipFileHandle handle2 = pool.borrow(archive2);
+        handle1.release();
+        handle2.release();
+
+        pool.borrow(archive3).release();
+        Assert.assertEquals(2, pool.size());
+        assertClosed(handle1);
+        Assert.assertNotNull(handle2.getZipFile().getEntry("a.txt"));
+    }
+
+    @Test
+    public void testHandlesInUseAreNotClosed() throws IOException {
+        final ZipFileHandlePool pool = newPool(1);
+        final ZipFileHandle handle1 = pool.borrow(archive1);
+        final ZipFileHandle handle2 = pool.borrow(archive2);
+        Assert.assertEquals(2, pool.size());
+        Assert.assertNotNull(handle1.getZipFile().getEntry("a.txt"));
+
+        handle1.release();
+        Assert.assertEquals(1, pool.size());
+        assertClosed(handle1);
+        handle2.release();
+    }
+
+    @Test
+    public void testInvalidatedHandleIsClosedByLastReader() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle handle = pool.borrow(archive1);
+        pool.invalidate(archive1);
+        Assert.assertEquals(0, pool.size());
+        Assert.assertNotNull(handle.getZipFile().getEntry("a.txt"));
+
+        final ZipFileHandle newHandle = pool.borrow(archive1);
+        Assert.assertNotSame(handle, newHandle);
+        handle.release();
+        assertClosed(handle);
+        newHandle.release();
+    }
+
+    @Test
+    public void testReleaseActionRunByLastReader() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle handle1 = pool.borrow(archive1);
+        final ZipFileHandle handle2 = pool.borrow(archive1);
+        final AtomicInteger runCount = new AtomicInteger();
+        final Runnable releaseAction = new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        };
+        Assert.assertFalse(pool.invalidate(archive1, releaseAction));
+
+        handle1.release();
+        Assert.assertEquals(0, runCount.get());
+        handle2.release();
+        assertClosed(handle2);
+        Assert.assertEquals(1, runCount.get());
+
+        // not in use anymore
+        Assert.assertTrue(pool.invalidate(archive1, releaseAction));
+        Assert.assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void testRetiredHandleInUseAfterSecondInvalidate() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle handle = pool.borrow(archive1);
+        final AtomicInteger runCount = new AtomicInteger();
+        final Runnable releaseAction = new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        };
+        Assert.assertFalse(pool.invalidate(archive1, releaseAction));
+        // the retired handle is not in the pool anymore, but still read
+        Assert.assertFalse(pool.invalidate(archive1, releaseAction));
+        Assert.assertTrue(pool.isInUse(archive1));
+
+        handle.release();
+        Assert.assertEquals(2, runCount.get());
+        Assert.assertTrue(pool.invalidate(archive1, releaseAction));
+    }
+
+    @Test
+    public void testReleaseActionWaitsForAllRetiredHandles() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle oldHandle = pool.borrow(archive1);
+        Assert.assertTrue(archive1.setLastModified(archive1.lastModified() - 10000));
+        // retires the handle of the previous content
+        final ZipFileHandle newHandle = pool.borrow(archive1);
+        final AtomicInteger runCount = new AtomicInteger();
+        Assert.assertFalse(pool.invalidate(archive1, new Runnable() {
+            @Override
+            public void run() {
+                runCount.incrementAndGet();
+            }
+        }));
+
+        newHandle.release();
+        Assert.assertEquals(0, runCount.get());
+        oldHandle.release();
+        Assert.assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void testModifiedArchiveIsReopened() throws IOException {
+        final ZipFileHandlePool pool = newPool(2);
+        final ZipFileHandle handle = pool.borrow(archive1);
+        handle.release();
+        Assert.assertTrue(archive1.setLastModified(archive1.lastModified() - 10000));
+
+        final ZipFileHandle newHandle = pool.borrow(archive1);
+        Assert.assertNotSame(handle, newHandle);
+        assertClosed(handle);
+        newHandle.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseTooOften() throws IOException {
+        final ZipFileHandle handle = newPool(2).borrow(archive1);
+        handle.release();
+        handle.release();
+    }
+
+    private static ZipFileHandlePool newPool(final int maxHandles) {
+        return new ZipFileHandlePool(maxHandles, LoggerFactory.getLogger(ZipFileHandlePoolTest.class));
+    }
+
+    private static void assertClosed(final ZipFileHandle handle) {
+        try {
+            handle.getZipFile().getEntry("a.txt");
+            Assert.fail("zip file is still open");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private File createArchive(final String name) throws IOException {
+        return archive(new File(tempFolder.getRoot(), name)).deflated("a.txt", "a").write();
+    }
+}
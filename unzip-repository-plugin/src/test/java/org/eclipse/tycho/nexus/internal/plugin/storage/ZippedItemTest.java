@@ -86,6 +86,20 @@ public class ZippedItemTest extends UnzipPluginTestSupport {
         createZippedItem(pathInZip);
     }
 
+    @Test(expected = ItemNotFoundException.class)
+    public void testPrecompressedPathNotServedByDefault() throws ItemNotFoundException, IOException {
+        final String pathInZip = "test.txt.gz";
+        createZippedItem(pathInZip);
+    }
+
+    @Test(expected = ItemNotFoundException.class)
+    public void testPrecompressedPathOfStoredEntry() throws ItemNotFoundException, IOException {
+        unzipReposMock.setServePrecompressedEntries(true);
+        // entries of the test archive are not compressed, so there is nothing to pass through
+        final String pathInZip = "test.txt.gz";
+        createZippedItem(pathInZip);
+    }
+
     @Test
     public void testZippedItemEmptyPath() throws ItemNotFoundException, IOException {
         final String pathInZip = "";
@@ -17,6 +17,8 @@ import java.io.InputStream;
 import java.net.URLConnection;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
@@ -31,6 +33,7 @@ import org.sonatype.nexus.proxy.RequestContext;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
 import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.FileContentLocator;
 import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
@@ -38,6 +41,8 @@ import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
 import org.sonatype.nexus.proxy.registry.ContentClass;
 import org.sonatype.nexus.proxy.repository.AbstractRepository;
+import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
+import org.sonatype.nexus.proxy.repository.HostedRepository;
 import org.sonatype.nexus.proxy.repository.RepositoryKind;
 import org.sonatype.nexus.util.ItemPathUtils;
 
@@ -46,6 +51,11 @@ public class RepositoryMock extends AbstractRepository {
 
     private final String repositoryId;
     private boolean behaveAsProxy = false;
+    private boolean behaveAsHosted = false;
+    private boolean storeFilesAsFiles = true;
+    private final AtomicInteger retrieveItemCount = new AtomicInteger();
+    private volatile String blockedPath;
+    private volatile CountDownLatch blockedPathLatch;
 
     private RepositoryItemUidFactory repositoryItemUidFactory;
     private RepositoryItemUidAttributeManager repositoryItemUidAttributeManager;
@@ -101,9 +111,17 @@ public class RepositoryMock extends AbstractRepository {
     @Override
     public StorageItem retrieveItem(final ResourceStoreRequest request) throws IllegalOperationException,
             ItemNotFoundException, StorageException, AccessDeniedException {
+        retrieveItemCount.incrementAndGet();
         if (request.getRequestPath().equals("") || request.getRequestPath().equals("/")) {
             throw new ItemNotFoundException(request);
         }
+        if (request.getRequestPath().equals(blockedPath)) {
+            try {
+                blockedPathLatch.await();
+            } catch (final InterruptedException e) {
+                throw new LocalStorageException(e);
+            }
+        }
         return doRetrieveItem(request);
     }
 
@@ -130,6 +148,14 @@ public class RepositoryMock extends AbstractRepository {
                 // in nexus repositories files are not found if the path ends with a trailing slash
                 throw new ItemNotFoundException(new ResourceStoreRequest(path));
             }
+            if (behaveAsHosted && storeFilesAsFiles) {
+                // a hosted repository backed by the file system serves its files directly
+                final DefaultStorageFileItem fileItem = new DefaultStorageFileItem(this, new ResourceStoreRequest(
+                        pathWithoutTrailingSlash), true, false, new FileContentLocator(file,
+                        URLConnection.guessContentTypeFromName(pathWithoutTrailingSlash)));
+                fileItem.setModified(file.lastModified());
+                return fileItem;
+            }
             try {
                 final ContentLocator contentLocator = EasyMock.createMock(ContentLocator.class);
                 // we need a new input stream for every getContent() call
@@ -196,12 +222,44 @@ public class RepositoryMock extends AbstractRepository {
         }
     }
 
+    public int getRetrieveItemCount() {
+        return retrieveItemCount.get();
+    }
+
+    /**
+     * Lets every retrieval of the given path wait until the latch is released, e.g. to simulate a
+     * slow download.
+     */
+    public void blockRetrieval(final String path, final CountDownLatch latch) {
+        this.blockedPathLatch = latch;
+        this.blockedPath = path;
+    }
+
     public void setBehaveAsProxy(final boolean behaveAsProxy) {
         this.behaveAsProxy = behaveAsProxy;
     }
 
+    /**
+     * Lets the repository report itself as hosted repository and serve its files with a
+     * {@link FileContentLocator}, like a hosted repository backed by the file system.
+     */
+    public void setBehaveAsHosted(final boolean behaveAsHosted) {
+        this.behaveAsHosted = behaveAsHosted;
+    }
+
+    /**
+     * Lets a hosted repository serve its files without a {@link FileContentLocator}, like a hosted
+     * repository with a storage other than the file system.
+     */
+    public void setStoreFilesAsFiles(final boolean storeFilesAsFiles) {
+        this.storeFilesAsFiles = storeFilesAsFiles;
+    }
+
     @Override
     public RepositoryKind getRepositoryKind() {
+        if (behaveAsHosted) {
+            return new DefaultRepositoryKind(HostedRepository.class, null);
+        }
         return null;
     }
 
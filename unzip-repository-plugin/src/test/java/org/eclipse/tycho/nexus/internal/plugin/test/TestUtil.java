@@ -10,13 +10,19 @@
  *******************************************************************************/
 package org.eclipse.tycho.nexus.internal.plugin.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.codehaus.plexus.util.FileUtils;
 import org.junit.Assert;
@@ -74,6 +80,90 @@ public class TestUtil {
         return null;
     }
 
+    /**
+     * Reads the given stream to its end and closes it.
+     */
+    public static byte[] readFully(final InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public static long crc(final byte[] content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    /**
+     * Returns a builder for a zip archive which is written to the given file.
+     */
+    public static ArchiveBuilder archive(final File file) {
+        return new ArchiveBuilder(file);
+    }
+
+    public static class ArchiveBuilder {
+        private final File file;
+        private final List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        private final List<byte[]> contents = new ArrayList<byte[]>();
+
+        ArchiveBuilder(final File file) {
+            this.file = file;
+        }
+
+        public ArchiveBuilder directory(final String name) {
+            return entry(new ZipEntry(name.endsWith("/") ? name : name + "/"), new byte[0]);
+        }
+
+        public ArchiveBuilder deflated(final String name, final byte[] content) {
+            return entry(new ZipEntry(name), content);
+        }
+
+        public ArchiveBuilder deflated(final String name, final String content) {
+            return deflated(name, content.getBytes());
+        }
+
+        public ArchiveBuilder stored(final String name, final byte[] content) {
+            final ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCrc(crc(content));
+            return entry(entry, content);
+        }
+
+        /**
+         * Adds the given entry, e.g. with an extra field. Stored entries must have their size and
+         * CRC set.
+         */
+        public ArchiveBuilder entry(final ZipEntry entry, final byte[] content) {
+            entries.add(entry);
+            contents.add(content);
+            return this;
+        }
+
+        public File write() throws IOException {
+            final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    out.putNextEntry(entries.get(i));
+                    out.write(contents.get(i));
+                    out.closeEntry();
+                }
+            } finally {
+                out.close();
+            }
+            return file;
+        }
+    }
+
     public static void cleanUpTestFiles() {
         try {
             FileUtils.deleteDirectory(FileUtils.createTempFile("nexus-unzip" + File.separator, "", null)
@@ -24,6 +24,18 @@ public class UnzipRepositoryMock extends DefaultUnzipRepository {
     private final Repository masterRepository;
     private final LocalRepositoryStorage localStorage;
     private final RepositoryItemUidFactory repositoryItemUidFactory;
+    private AttributesHandler attributesHandler;
+    private boolean servePrecompressedEntries;
+    private boolean spoolInflatedEntries;
+    private long maxCacheSize;
+    private long metadataMaxAge;
+    private int snapshotRetentionCount;
+    private long snapshotRetentionPeriod;
+    private boolean readHostedArchivesInPlace;
+    private long versionRefreshInterval;
+    private boolean notFoundCacheActive;
+    private int notFoundCacheTimeToLive;
+    private long metadataReadTimeout;
 
     public static DefaultUnzipRepository createUnzipRepository(final Repository masterRepo,
             LinkPersister linkPersister, RepositoryItemUidFactory repositoryItemUidFactory) {
@@ -40,12 +52,20 @@ public class UnzipRepositoryMock extends DefaultUnzipRepository {
 
     @Override
     public AttributesHandler getAttributesHandler() {
+        if (attributesHandler != null) {
+            return attributesHandler;
+        }
         return EasyMock.createNiceMock(AttributesHandler.class);
     }
 
+    @Override
+    public void setAttributesHandler(final AttributesHandler attributesHandler) {
+        this.attributesHandler = attributesHandler;
+    }
+
     @Override
     public String getId() {
-        return UnzipRepositoryMock.class.getName();
+        return UnzipRepositoryMock.class.getName() + "." + masterRepository.getId();
     }
 
     @Override
@@ -73,4 +93,114 @@ public class UnzipRepositoryMock extends DefaultUnzipRepository {
         return true;
     }
 
+    @Override
+    public boolean isServePrecompressedEntries() {
+        return servePrecompressedEntries;
+    }
+
+    @Override
+    public void setServePrecompressedEntries(final boolean servePrecompressedEntries) {
+        this.servePrecompressedEntries = servePrecompressedEntries;
+    }
+
+    @Override
+    public boolean isSpoolInflatedEntries() {
+        return spoolInflatedEntries;
+    }
+
+    @Override
+    public void setSpoolInflatedEntries(final boolean spoolInflatedEntries) {
+        this.spoolInflatedEntries = spoolInflatedEntries;
+    }
+
+    @Override
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    @Override
+    public void setMaxCacheSize(final long maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    @Override
+    public long getMetadataMaxAge() {
+        return metadataMaxAge;
+    }
+
+    @Override
+    public void setMetadataMaxAge(final long metadataMaxAge) {
+        this.metadataMaxAge = metadataMaxAge;
+    }
+
+    @Override
+    public int getSnapshotRetentionCount() {
+        return snapshotRetentionCount;
+    }
+
+    @Override
+    public void setSnapshotRetentionCount(final int snapshotRetentionCount) {
+        this.snapshotRetentionCount = snapshotRetentionCount;
+    }
+
+    @Override
+    public long getSnapshotRetentionPeriod() {
+        return snapshotRetentionPeriod;
+    }
+
+    @Override
+    public void setSnapshotRetentionPeriod(final long snapshotRetentionPeriod) {
+        this.snapshotRetentionPeriod = snapshotRetentionPeriod;
+    }
+
+    @Override
+    public boolean isReadHostedArchivesInPlace() {
+        return readHostedArchivesInPlace;
+    }
+
+    @Override
+    public void setReadHostedArchivesInPlace(final boolean readHostedArchivesInPlace) {
+        this.readHostedArchivesInPlace = readHostedArchivesInPlace;
+    }
+
+    @Override
+    public long getVersionRefreshInterval() {
+        return versionRefreshInterval;
+    }
+
+    @Override
+    public void setVersionRefreshInterval(final long versionRefreshInterval) {
+        this.versionRefreshInterval = versionRefreshInterval;
+    }
+
+    @Override
+    public boolean isNotFoundCacheActive() {
+        return notFoundCacheActive;
+    }
+
+    @Override
+    public void setNotFoundCacheActive(final boolean notFoundCacheActive) {
+        this.notFoundCacheActive = notFoundCacheActive;
+    }
+
+    @Override
+    public int getNotFoundCacheTimeToLive() {
+        return notFoundCacheTimeToLive;
+    }
+
+    @Override
+    public void setNotFoundCacheTimeToLive(final int notFoundCacheTimeToLive) {
+        this.notFoundCacheTimeToLive = notFoundCacheTimeToLive;
+    }
+
+    @Override
+    public long getMetadataReadTimeout() {
+        return metadataReadTimeout;
+    }
+
+    @Override
+    public void setMetadataReadTimeout(final long metadataReadTimeout) {
+        this.metadataReadTimeout = metadataReadTimeout;
+    }
+
 }